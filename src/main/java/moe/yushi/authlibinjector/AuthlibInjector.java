@@ -54,6 +54,7 @@ import moe.yushi.authlibinjector.httpd.URLFilter;
 import moe.yushi.authlibinjector.httpd.URLProcessor;
 import moe.yushi.authlibinjector.transform.ClassTransformer;
 import moe.yushi.authlibinjector.transform.DumpClassListener;
+import moe.yushi.authlibinjector.transform.TransformCache;
 import moe.yushi.authlibinjector.transform.support.AccountTypeTransformer;
 import moe.yushi.authlibinjector.transform.support.AuthServerNameInjector;
 import moe.yushi.authlibinjector.transform.support.AuthlibLogInterceptor;
@@ -71,8 +72,10 @@ import moe.yushi.authlibinjector.transform.support.SkinWhitelistTransformUnit;
 import moe.yushi.authlibinjector.transform.support.UsernameCharacterCheckTransformer;
 import moe.yushi.authlibinjector.transform.support.VelocityProfileKeyTransformUnit;
 import moe.yushi.authlibinjector.transform.support.YggdrasilKeyTransformUnit;
+import moe.yushi.authlibinjector.util.UpstreamClient;
 import moe.yushi.authlibinjector.yggdrasil.CustomYggdrasilAPIProvider;
 import moe.yushi.authlibinjector.yggdrasil.MojangYggdrasilAPIProvider;
+import moe.yushi.authlibinjector.yggdrasil.PersistentLookupCache;
 import moe.yushi.authlibinjector.yggdrasil.YggdrasilClient;
 
 public final class AuthlibInjector {
@@ -82,6 +85,7 @@ public final class AuthlibInjector {
 	private static Instrumentation instrumentation;
 	private static boolean retransformSupported;
 	private static ClassTransformer classTransformer;
+	private static List<YggdrasilClient> yggdrasilClients = emptyList();
 
 	public static synchronized void bootstrap(Instrumentation instrumentation, String apiUrl) throws InitializationException {
 		if (booted) {
@@ -224,7 +228,7 @@ public final class AuthlibInjector {
 		return a.equals(b);
 	}
 
-	private static List<URLFilter> createFilters(APIMetadata config) {
+	private static List<URLFilter> createFilters(APIMetadata config, UpstreamClient upstreamClient) {
 		if (Config.httpdDisabled) {
 			log(INFO, "Disabled local HTTP server");
 			return emptyList();
@@ -232,12 +236,41 @@ public final class AuthlibInjector {
 
 		List<URLFilter> filters = new ArrayList<>();
 
-		YggdrasilClient customClient = new YggdrasilClient(new CustomYggdrasilAPIProvider(config));
-		YggdrasilClient mojangClient = new YggdrasilClient(new MojangYggdrasilAPIProvider(), Config.mojangProxy);
+		YggdrasilClient customClient = new YggdrasilClient(new CustomYggdrasilAPIProvider(config), upstreamClient);
+		YggdrasilClient mojangClient = new YggdrasilClient(new MojangYggdrasilAPIProvider(), Config.mojangProxy, upstreamClient);
+		yggdrasilClients = Arrays.asList(customClient, mojangClient);
+		if (Config.profileCacheSize > 0) {
+			for (YggdrasilClient client : yggdrasilClients) {
+				client.enableProfileCache(Config.profileCacheSize, Config.profileCacheTtl * 1000L, Config.profileCacheNegativeTtl * 1000L,
+						Config.cacheStaleWhileRevalidate * 1000L, Config.cacheStaleIfError * 1000L);
+			}
+		}
+		if (Config.uuidCacheSize > 0) {
+			for (YggdrasilClient client : yggdrasilClients) {
+				client.enableUUIDCache(Config.uuidCacheSize, Config.uuidCacheTtl * 1000L, Config.uuidCacheNegativeTtl * 1000L,
+						Config.cacheStaleWhileRevalidate * 1000L, Config.cacheStaleIfError * 1000L);
+			}
+		}
+		if (Config.persistentCache != null && (Config.profileCacheSize > 0 || Config.uuidCacheSize > 0)) {
+			long retention = Math.max(Config.cacheStaleWhileRevalidate, Config.cacheStaleIfError) * 1000L;
+			PersistentLookupCache persistentCache = new PersistentLookupCache(Config.persistentCache, retention);
+			for (YggdrasilClient client : yggdrasilClients) {
+				client.setPersistentCache(persistentCache);
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(persistentCache::close, "authlib-injector-lookup-cache"));
+			log(INFO, "Persistent lookup cache: " + Config.persistentCache);
+		} else if (Config.persistentCache != null) {
+			log(WARNING, "The persistent lookup cache has no effect, since neither profileCacheSize nor uuidCacheSize is set");
+		}
+		if (Config.uuidBatchWindow > 0 && Config.uuidBatchSize > 1) {
+			for (YggdrasilClient client : yggdrasilClients) {
+				client.enableUUIDBatching(Config.uuidBatchWindow, Config.uuidBatchSize);
+			}
+		}
 
 		boolean legacySkinPolyfillDefault = !Boolean.TRUE.equals(config.getMeta().get("feature.legacy_skin_api"));
 		if (Config.legacySkinPolyfill.isEnabled(legacySkinPolyfillDefault)) {
-			filters.add(new LegacySkinAPIFilter(customClient));
+			filters.add(new LegacySkinAPIFilter(customClient, upstreamClient));
 		} else {
 			log(INFO, "Disabled legacy skin API polyfill");
 		}
@@ -268,11 +301,30 @@ public final class AuthlibInjector {
 	}
 
 	private static ClassTransformer createTransformer(APIMetadata config) {
-		URLProcessor urlProcessor = new URLProcessor(createFilters(config), new DefaultURLRedirector(config));
+		UpstreamClient upstreamClient = new UpstreamClient(Config.upstreamConnectTimeout, Config.upstreamReadTimeout, Config.upstreamMaxConnections, Config.upstreamHttp2.isEnabled(false));
+		if (upstreamClient.isHttp2()) {
+			log(INFO, "Using HTTP/2 for upstream requests");
+		} else if (Config.upstreamHttp2 == Config.FeatureOption.ENABLED) {
+			log(WARNING, "HTTP/2 for upstream requests requires Java 11 or later, falling back to HTTP/1.1");
+		}
+		URLProcessor urlProcessor = new URLProcessor(createFilters(config, upstreamClient), new DefaultURLRedirector(config), upstreamClient);
 
 		ClassTransformer transformer = new ClassTransformer();
 		transformer.setIgnores(Config.ignoredPackages);
 
+		if (Config.transformCache != null) {
+			// reuse the port of the last launch, otherwise a random port would invalidate the cache on every restart
+			urlProcessor.setPortFile(Config.transformCache.resolve("httpd-port"));
+			// transformed URLs point to the local httpd, so its port must be known before any class is looked up
+			String cacheSeed = "version=" + AuthlibInjector.class.getPackage().getImplementationVersion() + "\n" + config + "\n" + urlProcessor.getTransformSeed();
+			try {
+				transformer.setCache(new TransformCache(Config.transformCache, cacheSeed));
+				log(INFO, "Transform cache: " + Config.transformCache);
+			} catch (IOException e) {
+				log(WARNING, "Failed to initialize transform cache, it will be disabled", e);
+			}
+		}
+
 		if (Config.dumpClass) {
 			transformer.listeners.add(new DumpClassListener(Paths.get("").toAbsolutePath()));
 		}
@@ -326,6 +378,8 @@ public final class AuthlibInjector {
 		}
 	}
 
+	private static final int RETRANSFORM_BATCH_SIZE = 256;
+
 	public static void retransformAllClasses() {
 		if (!retransformSupported) {
 			return;
@@ -333,20 +387,79 @@ public final class AuthlibInjector {
 		log(INFO, "Attempt to retransform all classes");
 		long t0 = System.currentTimeMillis();
 
-		Class<?>[] classes = Stream.of(instrumentation.getAllLoadedClasses())
+		Class<?>[] loadedClasses = Stream.of(instrumentation.getAllLoadedClasses())
 				.filter(AuthlibInjector::canRetransformClass)
 				.toArray(Class[]::new);
-		if (classes.length > 0) {
-			try {
-				instrumentation.retransformClasses(classes);
-			} catch (Throwable e) {
-				log(WARNING, "Failed to retransform", e);
-				return;
-			}
+
+		Class<?>[] classes;
+		if (Config.retransformPrefilter.isEnabled(true)) {
+			classes = Stream.of(loadedClasses)
+					.parallel()
+					.filter(AuthlibInjector::mayNeedRetransform)
+					.toArray(Class[]::new);
+			long t1 = System.currentTimeMillis();
+			log(INFO, "Pre-filtered " + loadedClasses.length + " classes in " + (t1 - t0) + "ms, " + classes.length + " classes need to be retransformed");
+		} else {
+			classes = loadedClasses;
 		}
 
 		long t1 = System.currentTimeMillis();
-		log(INFO, "Retransformed " + classes.length + " classes in " + (t1 - t0) + "ms");
+		int failed = 0;
+		for (int start = 0; start < classes.length; start += RETRANSFORM_BATCH_SIZE) {
+			Class<?>[] batch = Arrays.copyOfRange(classes, start, Math.min(start + RETRANSFORM_BATCH_SIZE, classes.length));
+			failed += retransformBatch(batch);
+			log(DEBUG, "Retransformed " + (start + batch.length) + "/" + classes.length + " classes");
+		}
+
+		long t2 = System.currentTimeMillis();
+		log(INFO, "Retransformed " + (classes.length - failed) + " classes in " + (t2 - t1) + "ms (" + (t2 - t0) + "ms in total)"
+				+ (failed == 0 ? "" : ", " + failed + " classes failed"));
+	}
+
+	/**
+	 * @return the number of classes that failed to retransform
+	 */
+	private static int retransformBatch(Class<?>[] batch) {
+		try {
+			instrumentation.retransformClasses(batch);
+			return 0;
+		} catch (Throwable e) {
+			if (batch.length == 1) {
+				log(WARNING, "Failed to retransform " + batch[0], e);
+				return 1;
+			}
+			log(DEBUG, "Failed to retransform a batch of " + batch.length + " classes, retrying one by one", e);
+		}
+		int failed = 0;
+		for (Class<?> clazz : batch) {
+			failed += retransformBatch(new Class<?>[] { clazz });
+		}
+		return failed;
+	}
+
+	/**
+	 * Checks whether the class may be transformed, using the class file obtained from its class loader.
+	 * If the class file cannot be found, the class is considered a candidate.
+	 */
+	private static boolean mayNeedRetransform(Class<?> clazz) {
+		String className = clazz.getName();
+		if (!classTransformer.mayTransform(className, null)) {
+			return false;
+		}
+
+		String resource = className.replace('.', '/') + ".class";
+		ClassLoader loader = clazz.getClassLoader();
+		byte[] classfile;
+		try (InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(resource) : loader.getResourceAsStream(resource)) {
+			if (in == null) {
+				return true;
+			}
+			classfile = asBytes(in);
+		} catch (Throwable e) {
+			log(DEBUG, "Couldn't read class file of " + className, e);
+			return true;
+		}
+		return classTransformer.mayTransform(className, classfile);
 	}
 
 	private static boolean canRetransformClass(Class<?> clazz) {
@@ -365,4 +478,8 @@ public final class AuthlibInjector {
 	public static ClassTransformer getClassTransformer() {
 		return classTransformer;
 	}
+
+	public static List<YggdrasilClient> getYggdrasilClients() {
+		return yggdrasilClients;
+	}
 }
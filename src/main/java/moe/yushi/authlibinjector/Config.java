@@ -23,6 +23,9 @@ import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.Proxy.Type;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -62,8 +65,29 @@ public final class Config {
 	public static FeatureOption mojangAntiFeatures;
 	public static FeatureOption profileKey;
 	public static FeatureOption usernameCheck;
+	public static FeatureOption retransformPrefilter;
 	public static boolean noShowServerName;
 	public static int httpdPort;
+	public static int httpdThreads;
+	public static int httpdQueueSize;
+	public static FeatureOption httpdVirtualThreads;
+	public static FeatureOption httpdNonBlocking;
+	public static int upstreamConnectTimeout;
+	public static int upstreamReadTimeout;
+	public static int upstreamMaxConnections;
+	public static FeatureOption upstreamHttp2;
+	public static int profileCacheSize;
+	public static int profileCacheTtl;
+	public static int profileCacheNegativeTtl;
+	public static int uuidCacheSize;
+	public static int uuidCacheTtl;
+	public static int uuidCacheNegativeTtl;
+	public static int cacheStaleWhileRevalidate;
+	public static int cacheStaleIfError;
+	public static int uuidBatchWindow;
+	public static int uuidBatchSize;
+	public static /* nullable */ Path transformCache;
+	public static /* nullable */ Path persistentCache;
 
 	private static void initDebugOptions() {
 		String prop = System.getProperty("authlibinjector.debug");
@@ -158,6 +182,41 @@ public final class Config {
 		log(INFO, "Mojang proxy: " + mojangProxy);
 	}
 
+	private static void initTransformCache() {
+		String prop = System.getProperty("authlibinjector.transformCache");
+		if (prop == null) {
+			return;
+		}
+		if (prop.isEmpty()) {
+			log(ERROR, "-Dauthlibinjector.transformCache requires a directory");
+			throw new InitializationException();
+		}
+		try {
+			transformCache = Paths.get(prop).toAbsolutePath();
+		} catch (InvalidPathException e) {
+			log(ERROR, "Invalid transform cache directory: " + prop);
+			throw new InitializationException(e);
+		}
+	}
+
+	private static void initPersistentCache() {
+		String prop = System.getProperty("authlibinjector.persistentCache");
+		if (prop == null) {
+			return;
+		}
+		if (prop.isEmpty()) {
+			// next to the log file
+			persistentCache = Paths.get("authlib-injector.lookupcache").toAbsolutePath();
+			return;
+		}
+		try {
+			persistentCache = Paths.get(prop).toAbsolutePath();
+		} catch (InvalidPathException e) {
+			log(ERROR, "Invalid persistent cache path: " + prop);
+			throw new InitializationException(e);
+		}
+	}
+
 	private static FeatureOption parseFeatureOption(String property) {
 		String prop = System.getProperty(property);
 		if (prop == null) {
@@ -171,18 +230,56 @@ public final class Config {
 		}
 	}
 
+	private static int parseNonNegativeInt(String property, int defaultValue) {
+		String prop = System.getProperty(property);
+		if (prop == null) {
+			return defaultValue;
+		}
+		try {
+			int value = Integer.parseInt(prop);
+			if (value < 0) {
+				throw new NumberFormatException("Negative value");
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			log(ERROR, "Invalid " + property + ": " + prop);
+			throw new InitializationException(e);
+		}
+	}
+
 	static void init() {
 		initDebugOptions();
 		initIgnoredPackages();
 		initMojangProxy();
+		initTransformCache();
+		initPersistentCache();
 
 		mojangNamespace = parseFeatureOption("authlibinjector.mojangNamespace");
 		legacySkinPolyfill = parseFeatureOption("authlibinjector.legacySkinPolyfill");
 		mojangAntiFeatures = parseFeatureOption("authlibinjector.mojangAntiFeatures");
 		profileKey = parseFeatureOption("authlibinjector.profileKey");
 		usernameCheck = parseFeatureOption("authlibinjector.usernameCheck");
+		retransformPrefilter = parseFeatureOption("authlibinjector.retransformPrefilter");
 		httpdDisabled = System.getProperty("authlibinjector.disableHttpd") != null;
 		noShowServerName = System.getProperty("authlibinjector.noShowServerName") != null;
 		httpdPort = Integer.getInteger("authlibinjector.httpdPort", 0);
+		httpdThreads = parseNonNegativeInt("authlibinjector.httpdThreads", 0);
+		httpdQueueSize = parseNonNegativeInt("authlibinjector.httpdQueueSize", 64);
+		httpdVirtualThreads = parseFeatureOption("authlibinjector.httpdVirtualThreads");
+		httpdNonBlocking = parseFeatureOption("authlibinjector.httpdNonBlocking");
+		upstreamConnectTimeout = parseNonNegativeInt("authlibinjector.upstreamConnectTimeout", 10000);
+		upstreamReadTimeout = parseNonNegativeInt("authlibinjector.upstreamReadTimeout", 15000);
+		upstreamMaxConnections = parseNonNegativeInt("authlibinjector.upstreamMaxConnections", 16);
+		upstreamHttp2 = parseFeatureOption("authlibinjector.upstreamHttp2");
+		profileCacheSize = parseNonNegativeInt("authlibinjector.profileCacheSize", 0);
+		profileCacheTtl = parseNonNegativeInt("authlibinjector.profileCacheTtl", 60);
+		profileCacheNegativeTtl = parseNonNegativeInt("authlibinjector.profileCacheNegativeTtl", 10);
+		uuidCacheSize = parseNonNegativeInt("authlibinjector.uuidCacheSize", 0);
+		uuidCacheTtl = parseNonNegativeInt("authlibinjector.uuidCacheTtl", 60);
+		uuidCacheNegativeTtl = parseNonNegativeInt("authlibinjector.uuidCacheNegativeTtl", 10);
+		cacheStaleWhileRevalidate = parseNonNegativeInt("authlibinjector.cacheStaleWhileRevalidate", 0);
+		cacheStaleIfError = parseNonNegativeInt("authlibinjector.cacheStaleIfError", 0);
+		uuidBatchWindow = parseNonNegativeInt("authlibinjector.uuidBatchWindow", 0);
+		uuidBatchSize = parseNonNegativeInt("authlibinjector.uuidBatchSize", 10);
 	}
 }
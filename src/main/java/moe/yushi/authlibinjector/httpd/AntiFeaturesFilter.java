@@ -19,7 +19,10 @@ package moe.yushi.authlibinjector.httpd;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
@@ -38,6 +41,11 @@ public class AntiFeaturesFilter implements URLFilter {
 		return domain.equals("api.minecraftservices.com") || domain.equals("sessionserver.mojang.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(new HashSet<>(Arrays.asList("api.minecraftservices.com", "sessionserver.mojang.com")));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (domain.equals("api.minecraftservices.com") && path.equals("/privileges") && session.getMethod().equals("GET")) {
@@ -17,31 +17,323 @@
 package moe.yushi.authlibinjector.httpd;
 
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import moe.yushi.authlibinjector.AuthlibInjector;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.DefaultAsyncRunner;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.internal.org.json.simple.JSONArray;
 import moe.yushi.authlibinjector.internal.org.json.simple.JSONObject;
+import moe.yushi.authlibinjector.transform.ClassTransformer;
 import moe.yushi.authlibinjector.transform.PerformanceMetrics;
+import moe.yushi.authlibinjector.util.ExpiringCache;
+import moe.yushi.authlibinjector.util.LatencyHistogram;
+import moe.yushi.authlibinjector.util.RequestBatcher;
+import moe.yushi.authlibinjector.util.RequestMetrics;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.yggdrasil.YggdrasilClient;
 
 /**
  * Authlib-injector's debug API
  */
 public class DebugApiEndpoint {
 
+	private final URLProcessor urlProcessor;
+
+	public DebugApiEndpoint(URLProcessor urlProcessor) {
+		this.urlProcessor = urlProcessor;
+	}
+
 	public Response serve(IHTTPSession session) {
 		if (session.getUri().equals("/debug/metrics") && session.getMethod().equals("GET")) {
-			PerformanceMetrics metrics = AuthlibInjector.getClassTransformer().performanceMetrics;
-			JSONObject response = new JSONObject();
-			response.put("totalTime", metrics.getTotalTime());
-			response.put("matchTime", metrics.getMatchTime());
-			response.put("scanTime", metrics.getScanTime());
-			response.put("analysisTime", metrics.getAnalysisTime());
-			response.put("classesScanned", metrics.getClassesScanned());
-			response.put("classesSkipped", metrics.getClassesSkipped());
-			return Response.newFixedLength(Status.OK, CONTENT_TYPE_JSON, response.toJSONString());
+			return serveMetrics();
+		} else if (session.getUri().equals("/debug/metrics/prometheus") && session.getMethod().equals("GET")) {
+			return servePrometheusMetrics();
+		} else if (session.getUri().equals("/debug/metrics/reset") && session.getMethod().equals("POST")) {
+			AuthlibInjector.getClassTransformer().performanceMetrics.reset();
+			urlProcessor.resetMetrics();
+			for (YggdrasilClient client : AuthlibInjector.getYggdrasilClients()) {
+				client.queryUUIDsMetrics.reset();
+				client.queryProfileMetrics.reset();
+				client.getProfileCache().ifPresent(ExpiringCache::resetMetrics);
+				client.getUUIDCache().ifPresent(ExpiringCache::resetMetrics);
+				client.queryUUIDsFlights.resetMetrics();
+				client.queryProfileFlights.resetMetrics();
+				client.getUUIDBatcher().ifPresent(RequestBatcher::resetMetrics);
+			}
+			return Response.newFixedLength(Status.NO_CONTENT, null, null);
 		} else {
 			return Response.newFixedLength(Status.NOT_FOUND, null, null);
 		}
 	}
+
+	private Response serveMetrics() {
+		ClassTransformer transformer = AuthlibInjector.getClassTransformer();
+		PerformanceMetrics.Snapshot metrics = transformer.performanceMetrics.snapshot();
+		JSONObject response = new JSONObject();
+		response.put("totalTime", metrics.getTotalTime());
+		response.put("matchTime", metrics.getMatchTime());
+		response.put("scanTime", metrics.getScanTime());
+		response.put("analysisTime", metrics.getAnalysisTime());
+		response.put("classesScanned", metrics.getClassesScanned());
+		response.put("classesSkipped", metrics.getClassesSkipped());
+		response.put("indexHits", metrics.getIndexHits());
+		response.put("indexHitRate", metrics.getIndexHitRate());
+		response.put("cacheHits", metrics.getCacheHits());
+		response.put("cacheMisses", metrics.getCacheMisses());
+		JSONObject units = new JSONObject();
+		metrics.getUnits().forEach((unit, unitMetrics) -> {
+			JSONObject unitResponse = new JSONObject();
+			unitResponse.put("scanTime", unitMetrics.getScanTime());
+			unitResponse.put("analysisTime", unitMetrics.getAnalysisTime());
+			unitResponse.put("classesAnalyzed", unitMetrics.getClassesAnalyzed());
+			unitResponse.put("classesTransformed", unitMetrics.getClassesTransformed());
+			unitResponse.put("latency", toJSON(unitMetrics.getLatency()));
+			units.put(unit.toString(), unitResponse);
+		});
+		response.put("units", units);
+		response.put("latency", toJSON(metrics.getTotalLatency()));
+		JSONObject phases = new JSONObject();
+		metrics.getPhaseLatencies().forEach((phase, histogram) -> phases.put(phase.getName(), toJSON(histogram)));
+		response.put("phases", phases);
+		JSONObject classLoaders = new JSONObject();
+		metrics.getClassLoaderLatencies().forEach((loader, histogram) -> classLoaders.put(loader, toJSON(histogram)));
+		response.put("classLoaders", classLoaders);
+		JSONArray slowestClasses = new JSONArray();
+		for (PerformanceMetrics.SlowClass slowClass : metrics.getSlowestClasses()) {
+			JSONObject slowClassResponse = new JSONObject();
+			slowClassResponse.put("className", slowClass.getClassName());
+			slowClassResponse.put("classLoader", slowClass.getClassLoader());
+			slowClassResponse.put("time", slowClass.getTime());
+			slowestClasses.add(slowClassResponse);
+		}
+		response.put("slowestClasses", slowestClasses);
+		urlProcessor.getHttpdRunner().ifPresent(runner -> {
+			JSONObject httpd = new JSONObject();
+			httpd.put("openConnections", runner.getOpenConnections());
+			if (runner instanceof DefaultAsyncRunner) {
+				DefaultAsyncRunner pool = (DefaultAsyncRunner) runner;
+				httpd.put("maxThreads", pool.getMaxThreads());
+				httpd.put("poolSize", pool.getPoolSize());
+				httpd.put("activeThreads", pool.getActiveThreads());
+				httpd.put("queuedConnections", pool.getQueuedConnections());
+				httpd.put("queueCapacity", pool.getQueueCapacity());
+				httpd.put("rejectedConnections", pool.getRejectedConnections());
+			}
+			urlProcessor.getHttpdParkedConnections().ifPresent(parked -> httpd.put("parkedConnections", parked));
+			response.put("httpd", httpd);
+		});
+		JSONArray upstreamRoutes = new JSONArray();
+		for (UpstreamClient.Route route : urlProcessor.getUpstreamClient().getRoutes()) {
+			JSONObject routeResponse = new JSONObject();
+			routeResponse.put("route", route.getName());
+			routeResponse.put("activeConnections", route.getActiveConnections());
+			routeResponse.put("waitingRequests", route.getWaitingRequests());
+			routeResponse.put("requests", route.getRequests());
+			routeResponse.put("http2Requests", route.getHttp2Requests());
+			routeResponse.put("rejectedRequests", route.getRejectedRequests());
+			routeResponse.put("timeouts", route.getTimeouts());
+			upstreamRoutes.add(routeResponse);
+		}
+		response.put("upstreamRoutes", upstreamRoutes);
+		JSONObject profileCaches = new JSONObject();
+		JSONObject uuidCaches = new JSONObject();
+		for (YggdrasilClient client : AuthlibInjector.getYggdrasilClients()) {
+			client.getProfileCache().ifPresent(cache -> profileCaches.put(client.getAPIProvider().toString(), toJSON(cache)));
+			client.getUUIDCache().ifPresent(cache -> uuidCaches.put(client.getAPIProvider().toString(), toJSON(cache)));
+		}
+		response.put("profileCaches", profileCaches);
+		response.put("uuidCaches", uuidCaches);
+		JSONObject coalescedRequests = new JSONObject();
+		for (YggdrasilClient client : AuthlibInjector.getYggdrasilClients()) {
+			JSONObject clientResponse = new JSONObject();
+			clientResponse.put("queryUUIDs", client.queryUUIDsFlights.getCoalesced());
+			clientResponse.put("queryProfile", client.queryProfileFlights.getCoalesced());
+			coalescedRequests.put(client.getAPIProvider().toString(), clientResponse);
+		}
+		response.put("coalescedRequests", coalescedRequests);
+		JSONObject uuidBatches = new JSONObject();
+		for (YggdrasilClient client : AuthlibInjector.getYggdrasilClients()) {
+			client.getUUIDBatcher().ifPresent(batcher -> {
+				JSONObject batcherResponse = new JSONObject();
+				batcherResponse.put("batches", batcher.getBatches());
+				batcherResponse.put("batchedRequests", batcher.getBatchedRequests());
+				uuidBatches.put(client.getAPIProvider().toString(), batcherResponse);
+			});
+		}
+		response.put("uuidBatches", uuidBatches);
+		return Response.newFixedLength(Status.OK, CONTENT_TYPE_JSON, response.toJSONString());
+	}
+
+	private Response servePrometheusMetrics() {
+		ClassTransformer transformer = AuthlibInjector.getClassTransformer();
+		PerformanceMetrics.Snapshot metrics = transformer.performanceMetrics.snapshot();
+		OpenMetricsWriter out = new OpenMetricsWriter();
+
+		out.family("authlibinjector_transform_classes_scanned", "counter", "Classes passed to the transformer")
+				.counter("authlibinjector_transform_classes_scanned", metrics.getClassesScanned());
+		out.family("authlibinjector_transform_classes_skipped", "counter", "Classes in ignored packages")
+				.counter("authlibinjector_transform_classes_skipped", metrics.getClassesSkipped());
+		out.family("authlibinjector_transform_index_hits", "counter", "Classes targeted by name by a transform unit")
+				.counter("authlibinjector_transform_index_hits", metrics.getIndexHits());
+		out.family("authlibinjector_transform_cache_hits", "counter", "Classes found in the transform cache")
+				.counter("authlibinjector_transform_cache_hits", metrics.getCacheHits());
+		out.family("authlibinjector_transform_cache_misses", "counter", "Classes not found in the transform cache")
+				.counter("authlibinjector_transform_cache_misses", metrics.getCacheMisses());
+
+		out.family("authlibinjector_transform_seconds", "summary", "Time spent on each class");
+		out.summary("authlibinjector_transform_seconds", metrics.getTotalLatency());
+		out.family("authlibinjector_transform_phase_seconds", "summary", "Time spent on each class, by phase");
+		metrics.getPhaseLatencies().forEach((phase, histogram) -> out.summary("authlibinjector_transform_phase_seconds", histogram, "phase", phase.getName()));
+		out.family("authlibinjector_transform_unit_seconds", "summary", "Time spent on each class, by transform unit");
+		metrics.getUnits().forEach((unit, unitMetrics) -> out.summary("authlibinjector_transform_unit_seconds", unitMetrics.getLatency(), "unit", unit.toString()));
+		out.family("authlibinjector_transform_class_loader_seconds", "summary", "Time spent on each class, by class loader type");
+		metrics.getClassLoaderLatencies().forEach((loader, histogram) -> out.summary("authlibinjector_transform_class_loader_seconds", histogram, "class_loader", loader));
+
+		Map<URLFilter, RequestMetrics> filterMetrics = urlProcessor.getFilterMetrics();
+		out.family("authlibinjector_http_requests", "counter", "Local HTTP requests handled, by filter");
+		filterMetrics.forEach((filter, requestMetrics) -> out.counter("authlibinjector_http_requests", requestMetrics.getRequests(), "filter", getFilterName(filter)));
+		out.family("authlibinjector_http_request_errors", "counter", "Local HTTP requests failed, by filter");
+		filterMetrics.forEach((filter, requestMetrics) -> out.counter("authlibinjector_http_request_errors", requestMetrics.getErrors(), "filter", getFilterName(filter)));
+		out.family("authlibinjector_http_request_seconds", "summary", "Time spent on handling local HTTP requests, by filter");
+		filterMetrics.forEach((filter, requestMetrics) -> out.summary("authlibinjector_http_request_seconds", requestMetrics.getLatency(), "filter", getFilterName(filter)));
+
+		RequestMetrics reverseProxyMetrics = urlProcessor.getReverseProxyMetrics();
+		out.family("authlibinjector_reverse_proxy_requests", "counter", "Reverse-proxied requests")
+				.counter("authlibinjector_reverse_proxy_requests", reverseProxyMetrics.getRequests());
+		out.family("authlibinjector_reverse_proxy_errors", "counter", "Reverse-proxied requests that failed to reach upstream")
+				.counter("authlibinjector_reverse_proxy_errors", reverseProxyMetrics.getErrors());
+		out.family("authlibinjector_reverse_proxy_seconds", "summary", "Time until the upstream response headers are received")
+				.summary("authlibinjector_reverse_proxy_seconds", reverseProxyMetrics.getLatency());
+		out.family("authlibinjector_reverse_proxy_sent_bytes", "counter", "Request body bytes sent to upstream")
+				.counter("authlibinjector_reverse_proxy_sent_bytes", urlProcessor.getReverseProxyBytesSent());
+		out.family("authlibinjector_reverse_proxy_received_bytes", "counter", "Response body bytes received from upstream")
+				.counter("authlibinjector_reverse_proxy_received_bytes", urlProcessor.getReverseProxyBytesReceived());
+
+		urlProcessor.getHttpdRunner().ifPresent(runner -> {
+			out.family("authlibinjector_httpd_open_connections", "gauge", "Open connections to the local HTTP server")
+					.sample("authlibinjector_httpd_open_connections", runner.getOpenConnections());
+			if (runner instanceof DefaultAsyncRunner) {
+				DefaultAsyncRunner pool = (DefaultAsyncRunner) runner;
+				out.family("authlibinjector_httpd_threads", "gauge", "Threads of the local HTTP server")
+						.sample("authlibinjector_httpd_threads", pool.getPoolSize(), "state", "total")
+						.sample("authlibinjector_httpd_threads", pool.getActiveThreads(), "state", "active");
+				out.family("authlibinjector_httpd_max_threads", "gauge", "Maximum threads of the local HTTP server, 0 if unbounded")
+						.sample("authlibinjector_httpd_max_threads", pool.getMaxThreads());
+				out.family("authlibinjector_httpd_queued_connections", "gauge", "Connections waiting for a thread")
+						.sample("authlibinjector_httpd_queued_connections", pool.getQueuedConnections());
+				out.family("authlibinjector_httpd_rejected_connections", "counter", "Connections closed because the thread pool was saturated")
+						.counter("authlibinjector_httpd_rejected_connections", pool.getRejectedConnections());
+			}
+		});
+		urlProcessor.getHttpdParkedConnections().ifPresent(parked -> {
+			out.family("authlibinjector_httpd_parked_connections", "gauge", "Idle keep-alive connections waiting in the selector")
+					.sample("authlibinjector_httpd_parked_connections", parked);
+		});
+
+		List<YggdrasilClient> clients = AuthlibInjector.getYggdrasilClients();
+		out.family("authlibinjector_upstream_requests", "counter", "Requests to the Yggdrasil APIs");
+		forEachUpstreamOperation(clients, (requestMetrics, labels) -> out.counter("authlibinjector_upstream_requests", requestMetrics.getRequests(), labels));
+		out.family("authlibinjector_upstream_errors", "counter", "Failed requests to the Yggdrasil APIs");
+		forEachUpstreamOperation(clients, (requestMetrics, labels) -> out.counter("authlibinjector_upstream_errors", requestMetrics.getErrors(), labels));
+		out.family("authlibinjector_upstream_seconds", "summary", "Latency of the requests to the Yggdrasil APIs");
+		forEachUpstreamOperation(clients, (requestMetrics, labels) -> out.summary("authlibinjector_upstream_seconds", requestMetrics.getLatency(), labels));
+		out.family("authlibinjector_upstream_coalesced_requests", "counter", "Queries that shared the result of an identical query in flight");
+		for (YggdrasilClient client : clients) {
+			String api = client.getAPIProvider().toString();
+			out.counter("authlibinjector_upstream_coalesced_requests", client.queryUUIDsFlights.getCoalesced(), "api", api, "operation", "queryUUIDs");
+			out.counter("authlibinjector_upstream_coalesced_requests", client.queryProfileFlights.getCoalesced(), "api", api, "operation", "queryProfile");
+		}
+		out.family("authlibinjector_upstream_uuid_batches", "counter", "Batched UUID queries sent to the Yggdrasil APIs");
+		clients.forEach(client -> client.getUUIDBatcher().ifPresent(batcher -> out.counter("authlibinjector_upstream_uuid_batches", batcher.getBatches(), "api", client.getAPIProvider().toString())));
+		out.family("authlibinjector_upstream_uuid_batched_requests", "counter", "UUID queries that joined the batch of another query");
+		clients.forEach(client -> client.getUUIDBatcher().ifPresent(batcher -> out.counter("authlibinjector_upstream_uuid_batched_requests", batcher.getBatchedRequests(), "api", client.getAPIProvider().toString())));
+
+		out.family("authlibinjector_cache_entries", "gauge", "Entries in the profile and UUID caches");
+		forEachCache(clients, (cache, labels) -> out.sample("authlibinjector_cache_entries", cache.size(), labels));
+		out.family("authlibinjector_cache_hits", "counter", "Lookups served from the profile and UUID caches");
+		forEachCache(clients, (cache, labels) -> {
+			out.counter("authlibinjector_cache_hits", cache.getHits(), append(labels, "result", "found"));
+			out.counter("authlibinjector_cache_hits", cache.getNegativeHits(), append(labels, "result", "not_found"));
+		});
+		out.family("authlibinjector_cache_stale_hits", "counter", "Expired entries served from the profile and UUID caches");
+		forEachCache(clients, (cache, labels) -> {
+			out.counter("authlibinjector_cache_stale_hits", cache.getStaleHits(), append(labels, "reason", "revalidate"));
+			out.counter("authlibinjector_cache_stale_hits", cache.getStaleIfErrorHits(), append(labels, "reason", "error"));
+		});
+		out.family("authlibinjector_cache_misses", "counter", "Lookups not found in the profile and UUID caches");
+		forEachCache(clients, (cache, labels) -> out.counter("authlibinjector_cache_misses", cache.getMisses(), labels));
+		out.family("authlibinjector_cache_evictions", "counter", "Entries evicted from the profile and UUID caches because they were full");
+		forEachCache(clients, (cache, labels) -> out.counter("authlibinjector_cache_evictions", cache.getEvictions(), labels));
+
+		Collection<UpstreamClient.Route> routes = urlProcessor.getUpstreamClient().getRoutes();
+		out.family("authlibinjector_upstream_route_connections", "gauge", "Requests to upstream servers holding or waiting for a connection slot");
+		for (UpstreamClient.Route route : routes) {
+			out.sample("authlibinjector_upstream_route_connections", route.getActiveConnections(), "route", route.getName(), "state", "active");
+			out.sample("authlibinjector_upstream_route_connections", route.getWaitingRequests(), "route", route.getName(), "state", "waiting");
+		}
+		out.family("authlibinjector_upstream_route_requests", "counter", "Requests to upstream servers");
+		routes.forEach(route -> out.counter("authlibinjector_upstream_route_requests", route.getRequests(), "route", route.getName()));
+		out.family("authlibinjector_upstream_route_http2_requests", "counter", "Requests to upstream servers served over HTTP/2");
+		routes.forEach(route -> out.counter("authlibinjector_upstream_route_http2_requests", route.getHttp2Requests(), "route", route.getName()));
+		out.family("authlibinjector_upstream_route_rejected_requests", "counter", "Requests to upstream servers that failed to get a connection slot in time");
+		routes.forEach(route -> out.counter("authlibinjector_upstream_route_rejected_requests", route.getRejectedRequests(), "route", route.getName()));
+		out.family("authlibinjector_upstream_route_timeouts", "counter", "Requests to upstream servers that failed due to a connect or read timeout");
+		routes.forEach(route -> out.counter("authlibinjector_upstream_route_timeouts", route.getTimeouts(), "route", route.getName()));
+
+		return Response.newFixedLength(Status.OK, OpenMetricsWriter.CONTENT_TYPE, out.finish());
+	}
+
+	private static String getFilterName(URLFilter filter) {
+		return filter.getClass().getSimpleName();
+	}
+
+	private static void forEachUpstreamOperation(List<YggdrasilClient> clients, BiConsumer<RequestMetrics, String[]> action) {
+		for (YggdrasilClient client : clients) {
+			String api = client.getAPIProvider().toString();
+			action.accept(client.queryUUIDsMetrics, new String[] { "api", api, "operation", "queryUUIDs" });
+			action.accept(client.queryProfileMetrics, new String[] { "api", api, "operation", "queryProfile" });
+		}
+	}
+
+	private static void forEachCache(List<YggdrasilClient> clients, BiConsumer<ExpiringCache<?, ?>, String[]> action) {
+		for (YggdrasilClient client : clients) {
+			String api = client.getAPIProvider().toString();
+			client.getProfileCache().ifPresent(cache -> action.accept(cache, new String[] { "api", api, "cache", "profile" }));
+			client.getUUIDCache().ifPresent(cache -> action.accept(cache, new String[] { "api", api, "cache", "uuid" }));
+		}
+	}
+
+	private static String[] append(String[] labels, String... more) {
+		String[] result = Arrays.copyOf(labels, labels.length + more.length);
+		System.arraycopy(more, 0, result, labels.length, more.length);
+		return result;
+	}
+
+	private static JSONObject toJSON(ExpiringCache<?, ?> cache) {
+		JSONObject response = new JSONObject();
+		response.put("size", cache.size());
+		response.put("hits", cache.getHits());
+		response.put("negativeHits", cache.getNegativeHits());
+		response.put("staleHits", cache.getStaleHits());
+		response.put("staleIfErrorHits", cache.getStaleIfErrorHits());
+		response.put("misses", cache.getMisses());
+		response.put("evictions", cache.getEvictions());
+		return response;
+	}
+
+	private static JSONObject toJSON(LatencyHistogram.Snapshot histogram) {
+		JSONObject response = new JSONObject();
+		response.put("count", histogram.getCount());
+		response.put("p50", histogram.getValueAtQuantile(0.5));
+		response.put("p90", histogram.getValueAtQuantile(0.9));
+		response.put("p99", histogram.getValueAtQuantile(0.99));
+		response.put("max", histogram.getMax());
+		return response;
+	}
 }
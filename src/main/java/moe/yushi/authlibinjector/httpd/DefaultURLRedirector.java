@@ -19,6 +19,7 @@ package moe.yushi.authlibinjector.httpd;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import moe.yushi.authlibinjector.APIMetadata;
 
 public class DefaultURLRedirector implements URLRedirector {
@@ -50,4 +51,9 @@ public class DefaultURLRedirector implements URLRedirector {
 		return Optional.of(apiRoot + subdirectory + path);
 	}
 
+	@Override
+	public Optional<Set<String>> getRedirectedDomains() {
+		return Optional.of(domainMapping.keySet());
+	}
+
 }
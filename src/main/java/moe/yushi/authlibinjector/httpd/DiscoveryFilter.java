@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.httpd;
 
+import static java.util.Collections.singleton;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
 import static moe.yushi.authlibinjector.util.IOUtils.asString;
@@ -27,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
@@ -56,6 +58,11 @@ public class DiscoveryFilter implements URLFilter {
 		return domain.equals("discovery.minecraftservices.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(singleton("discovery.minecraftservices.com"));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (domain.equals("discovery.minecraftservices.com") && path.equals("/minecraft/client") && session.getMethod().equals("GET")) {
@@ -17,11 +17,11 @@
 package moe.yushi.authlibinjector.httpd;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Collections.singleton;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
 import static moe.yushi.authlibinjector.util.IOUtils.asString;
-import static moe.yushi.authlibinjector.util.IOUtils.http;
 import static moe.yushi.authlibinjector.util.IOUtils.newUncheckedIOException;
 import static moe.yushi.authlibinjector.util.JsonUtils.asJsonObject;
 import static moe.yushi.authlibinjector.util.JsonUtils.parseJson;
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.Base64;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
@@ -40,6 +41,7 @@ import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
 import moe.yushi.authlibinjector.internal.org.json.simple.JSONObject;
 import moe.yushi.authlibinjector.util.JsonUtils;
+import moe.yushi.authlibinjector.util.UpstreamClient;
 import moe.yushi.authlibinjector.yggdrasil.YggdrasilClient;
 
 public class LegacySkinAPIFilter implements URLFilter {
@@ -47,9 +49,11 @@ public class LegacySkinAPIFilter implements URLFilter {
 	private static final Pattern PATH_SKINS = Pattern.compile("^/MinecraftSkins/(?<username>[^/]+)\\.png$");
 
 	private YggdrasilClient upstream;
+	private UpstreamClient upstreamClient;
 
-	public LegacySkinAPIFilter(YggdrasilClient upstream) {
+	public LegacySkinAPIFilter(YggdrasilClient upstream, UpstreamClient upstreamClient) {
 		this.upstream = upstream;
+		this.upstreamClient = upstreamClient;
 	}
 
 	@Override
@@ -57,6 +61,11 @@ public class LegacySkinAPIFilter implements URLFilter {
 		return domain.equals("skins.minecraft.net");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(singleton("skins.minecraft.net"));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) {
 		if (!domain.equals("skins.minecraft.net"))
@@ -86,7 +95,7 @@ public class LegacySkinAPIFilter implements URLFilter {
 			log(DEBUG, "Retrieving skin for " + username + " from " + url);
 			byte[] data;
 			try {
-				data = http("GET", url);
+				data = upstreamClient.request("GET", url, null, null, null);
 			} catch (IOException e) {
 				throw newUncheckedIOException("Failed to retrieve skin from " + url, e);
 			}
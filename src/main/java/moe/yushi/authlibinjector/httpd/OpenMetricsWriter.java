@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.httpd;
+
+import moe.yushi.authlibinjector.util.LatencyHistogram;
+
+/**
+ * Writes metrics in the OpenMetrics text format.
+ *
+ * Samples must be written right after their family, see {@link #family(String, String, String)}.
+ * Durations are converted from nanoseconds to seconds.
+ */
+class OpenMetricsWriter {
+
+	static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	private final StringBuilder out = new StringBuilder();
+
+	/**
+	 * Starts a metric family.
+	 *
+	 * @param type counter, gauge or summary
+	 */
+	OpenMetricsWriter family(String name, String type, String help) {
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		return this;
+	}
+
+	/**
+	 * @param labels alternating label names and values
+	 */
+	OpenMetricsWriter sample(String name, double value, String... labels) {
+		out.append(name);
+		if (labels.length > 0) {
+			out.append('{');
+			for (int i = 0; i < labels.length; i += 2) {
+				if (i > 0) {
+					out.append(',');
+				}
+				out.append(labels[i]).append("=\"");
+				appendEscaped(labels[i + 1]);
+				out.append('"');
+			}
+			out.append('}');
+		}
+		out.append(' ');
+		if (value == (long) value) {
+			out.append((long) value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+		return this;
+	}
+
+	/**
+	 * Writes the samples of a counter family.
+	 */
+	OpenMetricsWriter counter(String family, long value, String... labels) {
+		return sample(family + "_total", value, labels);
+	}
+
+	/**
+	 * Writes the samples of a summary family, in seconds.
+	 */
+	OpenMetricsWriter summary(String family, LatencyHistogram.Snapshot histogram, String... labels) {
+		String[] quantileLabels = new String[labels.length + 2];
+		System.arraycopy(labels, 0, quantileLabels, 0, labels.length);
+		quantileLabels[labels.length] = "quantile";
+		for (double quantile : QUANTILES) {
+			quantileLabels[labels.length + 1] = String.valueOf(quantile);
+			sample(family, toSeconds(histogram.getValueAtQuantile(quantile)), quantileLabels);
+		}
+		sample(family + "_sum", toSeconds(histogram.getSum()), labels);
+		sample(family + "_count", histogram.getCount(), labels);
+		return this;
+	}
+
+	private void appendEscaped(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				default:
+					out.append(c);
+			}
+		}
+	}
+
+	private static double toSeconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	/**
+	 * Terminates the exposition, and returns it.
+	 */
+	String finish() {
+		out.append("# EOF\n");
+		return out.toString();
+	}
+}
@@ -17,6 +17,7 @@
 package moe.yushi.authlibinjector.httpd;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singleton;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import java.io.IOException;
 import java.security.KeyPair;
@@ -27,6 +28,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.Base64;
 import java.util.Optional;
+import java.util.Set;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
@@ -43,6 +45,11 @@ public class ProfileKeyFilter implements URLFilter {
 		return domain.equals("api.minecraftservices.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(singleton("api.minecraftservices.com"));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (domain.equals("api.minecraftservices.com") && path.equals("/player/certificates") && session.getMethod().equals("POST")) {
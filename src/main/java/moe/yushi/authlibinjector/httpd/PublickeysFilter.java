@@ -16,11 +16,13 @@
  */
 package moe.yushi.authlibinjector.httpd;
 
+import static java.util.Collections.singleton;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import java.io.IOException;
 import java.security.PublicKey;
 import java.util.Base64;
 import java.util.Optional;
+import java.util.Set;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
@@ -35,6 +37,11 @@ public class PublickeysFilter implements URLFilter {
 		return domain.equals("api.minecraftservices.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(singleton("api.minecraftservices.com"));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (domain.equals("api.minecraftservices.com") && path.equals("/publickeys") && session.getMethod().equals("GET")) {
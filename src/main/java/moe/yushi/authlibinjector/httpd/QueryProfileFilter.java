@@ -16,12 +16,14 @@
  */
 package moe.yushi.authlibinjector.httpd;
 
+import static java.util.Collections.singleton;
 import static java.util.Optional.empty;
 import static moe.yushi.authlibinjector.util.UUIDUtils.fromUnsignedUUID;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,6 +52,11 @@ public class QueryProfileFilter implements URLFilter {
 		return domain.equals("sessionserver.mojang.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(singleton("sessionserver.mojang.com"));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (!domain.equals("sessionserver.mojang.com"))
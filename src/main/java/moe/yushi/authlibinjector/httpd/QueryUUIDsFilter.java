@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.httpd;
 
+import static java.util.Collections.emptyMap;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
 import static moe.yushi.authlibinjector.util.IOUtils.asString;
@@ -25,12 +26,18 @@ import static moe.yushi.authlibinjector.util.JsonUtils.parseJson;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
@@ -52,6 +59,11 @@ public class QueryUUIDsFilter implements URLFilter {
 		return domain.equals("api.mojang.com") || domain.equals("api.minecraftservices.com");
 	}
 
+	@Override
+	public Optional<Set<String>> getHandledDomains() {
+		return Optional.of(new HashSet<>(Arrays.asList("api.mojang.com", "api.minecraftservices.com")));
+	}
+
 	@Override
 	public Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException {
 		if (
@@ -68,7 +80,7 @@ public class QueryUUIDsFilter implements URLFilter {
 		}
 	}
 
-	private Map<String, UUID> performQuery(Set<String> names) {
+	Map<String, UUID> performQuery(Set<String> names) {
 		Set<String> customNames = new LinkedHashSet<>();
 		Set<String> mojangNames = new LinkedHashSet<>();
 		names.forEach(name -> {
@@ -79,19 +91,53 @@ public class QueryUUIDsFilter implements URLFilter {
 			}
 		});
 
-		Map<String, UUID> result = new LinkedHashMap<>();
+		// query both APIs in parallel; the Mojang one runs on the current thread
+		CompletableFuture<Map<String, UUID>> customResult = null;
 		if (!customNames.isEmpty()) {
-			result.putAll(customClient.queryUUIDs(customNames));
+			customResult = mojangNames.isEmpty()
+					? CompletableFuture.completedFuture(customClient.queryUUIDs(customNames))
+					: customClient.queryUUIDsAsync(customNames);
 		}
-		if (!mojangNames.isEmpty()) {
-			mojangClient.queryUUIDs(mojangNames)
+		Map<String, UUID> mojangResult = mojangNames.isEmpty() ? emptyMap() : mojangClient.queryUUIDs(mojangNames);
+
+		// lowercase name -> name as spelled by the server
+		Map<String, String> spellings = new HashMap<>();
+		Map<String, UUID> found = new HashMap<>();
+		if (customResult != null) {
+			join(customResult)
 					.forEach((name, uuid) -> {
-						result.put(name + NAME_SUFFIX, maskUUID(uuid));
+						spellings.put(name.toLowerCase(Locale.ROOT), name);
+						found.put(name, uuid);
 					});
 		}
+		mojangResult.forEach((name, uuid) -> {
+			spellings.put((name + NAME_SUFFIX).toLowerCase(Locale.ROOT), name + NAME_SUFFIX);
+			found.put(name + NAME_SUFFIX, maskUUID(uuid));
+		});
+
+		// merge the results of both APIs in the order of the request
+		Map<String, UUID> result = new LinkedHashMap<>();
+		for (String name : names) {
+			String spelling = spellings.remove(name.toLowerCase(Locale.ROOT));
+			if (spelling != null) {
+				result.put(spelling, found.remove(spelling));
+			}
+		}
+		result.putAll(found);
 		return result;
 	}
 
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
 	private static final int MSB_MASK = 0x00008000;
 	static final String NAME_SUFFIX = "@mojang";
 
@@ -18,6 +18,7 @@ package moe.yushi.authlibinjector.httpd;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.Set;
 
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
@@ -37,5 +38,15 @@ public interface URLFilter {
 	 */
 	boolean canHandle(String domain);
 
+	/**
+	 * Returns all the domains that canHandle() may return true for,
+	 * or empty if they can't be enumerated.
+	 *
+	 * This allows URLProcessor to reject unrelated URLs without calling canHandle().
+	 */
+	default Optional<Set<String>> getHandledDomains() {
+		return Optional.empty();
+	}
+
 	Optional<Response> handle(URLProcessor urlProcessor, String domain, String path, IHTTPSession session) throws IOException;
 }
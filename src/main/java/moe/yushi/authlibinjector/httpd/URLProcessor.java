@@ -16,33 +16,50 @@
  */
 package moe.yushi.authlibinjector.httpd;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
 import static moe.yushi.authlibinjector.util.IOUtils.transfer;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
 import static moe.yushi.authlibinjector.util.Logging.Level.INFO;
 import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import moe.yushi.authlibinjector.Config;
+import moe.yushi.authlibinjector.Config.FeatureOption;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.DefaultAsyncRunner;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IAsyncRunner;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.IStatus;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.ThreadPerConnectionAsyncRunner;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
+import moe.yushi.authlibinjector.util.RequestMetrics;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.util.VirtualThreads;
 
 public class URLProcessor {
 
@@ -51,10 +68,78 @@ public class URLProcessor {
 
 	private List<URLFilter> filters;
 	private URLRedirector redirector;
+	private UpstreamClient upstreamClient;
 
-	public URLProcessor(List<URLFilter> filters, URLRedirector redirector) {
+	private final Map<URLFilter, RequestMetrics> filterMetrics = new LinkedHashMap<>();
+	private final RequestMetrics reverseProxyMetrics = new RequestMetrics();
+	private final LongAdder reverseProxyBytesSent = new LongAdder();
+	private final LongAdder reverseProxyBytesReceived = new LongAdder();
+
+	// matches every URL that may be transformed; null if some domains can't be enumerated
+	private MultiPatternMatcher domainMatcher;
+
+	public URLProcessor(List<URLFilter> filters, URLRedirector redirector, UpstreamClient upstreamClient) {
 		this.filters = filters;
 		this.redirector = redirector;
+		this.upstreamClient = upstreamClient;
+		this.domainMatcher = createDomainMatcher();
+		for (URLFilter filter : filters) {
+			filterMetrics.put(filter, new RequestMetrics());
+		}
+	}
+
+	private MultiPatternMatcher createDomainMatcher() {
+		Set<String> domains = new LinkedHashSet<>();
+		for (URLFilter filter : filters) {
+			Optional<Set<String>> handled = filter.getHandledDomains();
+			if (!handled.isPresent()) {
+				return null;
+			}
+			domains.addAll(handled.get());
+		}
+		Optional<Set<String>> redirected = redirector.getRedirectedDomains();
+		if (!redirected.isPresent()) {
+			return null;
+		}
+		domains.addAll(redirected.get());
+
+		for (String domain : domains) {
+			for (int i = 0; i < domain.length(); i++) {
+				if (domain.charAt(i) >= 0x80) {
+					return null;
+				}
+			}
+		}
+		return new MultiPatternMatcher(domains);
+	}
+
+	/**
+	 * Returns a matcher that matches every URL that {@link #transformURL(String)} may transform,
+	 * or empty if the domains of the filters and the redirector can't be enumerated.
+	 */
+	public Optional<MultiPatternMatcher> getDomainMatcher() {
+		return Optional.ofNullable(domainMatcher);
+	}
+
+	/**
+	 * Returns a string that describes everything {@link #transformURL(String)} depends on
+	 * besides the API metadata, i.e. the address of the local HTTP server and the filters.
+	 * Transformation results are only reusable across restarts if this string is unchanged.
+	 *
+	 * This starts the local HTTP server, since its port is part of the transformed URLs.
+	 */
+	public String getTransformSeed() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("local=http://127.0.0.1:").append(getLocalApiPort()).append('\n');
+		for (URLFilter filter : filters) {
+			sb.append("filter=").append(filter.getClass().getName());
+			filter.getHandledDomains().ifPresent(domains -> sb.append(' ').append(new TreeSet<>(domains)));
+			sb.append('\n');
+		}
+		sb.append("redirector=").append(redirector.getClass().getName());
+		redirector.getRedirectedDomains().ifPresent(domains -> sb.append(' ').append(new TreeSet<>(domains)));
+		sb.append('\n');
+		return sb.toString();
 	}
 
 	/**
@@ -72,6 +157,10 @@ public class URLProcessor {
 			// fast path
 			return Optional.empty();
 		}
+		if (domainMatcher != null && !domainMatcher.matches(inputUrl)) {
+			// none of the domains we are interested in occurs in the URL
+			return Optional.empty();
+		}
 		Matcher matcher = URL_REGEX.matcher(inputUrl);
 		if (!matcher.find()) {
 			return Optional.empty();
@@ -103,28 +192,139 @@ public class URLProcessor {
 		return redirector.redirect(domain, path);
 	}
 
-	private DebugApiEndpoint debugApi = new DebugApiEndpoint();
+	/**
+	 * Returns the metrics of the requests handled by each filter.
+	 * Only the time spent in {@link URLFilter#handle} is measured, not the time of sending the response.
+	 */
+	public Map<URLFilter, RequestMetrics> getFilterMetrics() {
+		return Collections.unmodifiableMap(filterMetrics);
+	}
+
+	/**
+	 * Returns the metrics of the reverse-proxied requests.
+	 * The latency is measured until the response headers are received from upstream.
+	 */
+	public RequestMetrics getReverseProxyMetrics() {
+		return reverseProxyMetrics;
+	}
+
+	/**
+	 * Returns the number of request body bytes sent to upstream by the reverse proxy.
+	 */
+	public long getReverseProxyBytesSent() {
+		return reverseProxyBytesSent.sum();
+	}
+
+	/**
+	 * Returns the number of response body bytes received from upstream by the reverse proxy.
+	 */
+	public long getReverseProxyBytesReceived() {
+		return reverseProxyBytesReceived.sum();
+	}
+
+	/**
+	 * Returns the client used for the requests to upstream servers, including the reverse-proxied ones.
+	 */
+	public UpstreamClient getUpstreamClient() {
+		return upstreamClient;
+	}
+
+	/**
+	 * Returns the threading strategy of the local HTTP server, or empty if the server hasn't started.
+	 */
+	public Optional<IAsyncRunner> getHttpdRunner() {
+		NanoHTTPD httpd = this.httpd;
+		return httpd == null ? Optional.empty() : Optional.of(httpd.getAsyncRunner());
+	}
+
+	/**
+	 * Returns the number of idle keep-alive connections that are waiting in the selector,
+	 * or empty if the httpd is not running in non-blocking mode.
+	 */
+	public Optional<Integer> getHttpdParkedConnections() {
+		NanoHTTPD httpd = this.httpd;
+		return httpd == null || !httpd.isNonBlocking() ? Optional.empty() : Optional.of(httpd.getParkedConnections());
+	}
+
+	public void resetMetrics() {
+		filterMetrics.values().forEach(RequestMetrics::reset);
+		reverseProxyMetrics.reset();
+		reverseProxyBytesSent.reset();
+		reverseProxyBytesReceived.reset();
+		upstreamClient.resetMetrics();
+	}
+
+	private DebugApiEndpoint debugApi = new DebugApiEndpoint(this);
 	private volatile NanoHTTPD httpd;
 	private final Object httpdLock = new Object();
+	private /* nullable */ Path portFile;
+
+	/**
+	 * Remembers the port of the local HTTP server in the given file, and tries to listen on it again on the next launch,
+	 * so that the transformed URLs (which contain the port) stay the same across restarts.
+	 * Only used if -Dauthlibinjector.httpdPort is not specified.
+	 */
+	public void setPortFile(Path portFile) {
+		this.portFile = portFile;
+	}
 
 	private int getLocalApiPort() {
 		synchronized (httpdLock) {
 			if (httpd == null) {
-				httpd = createHttpd();
-				try {
-					httpd.start();
-				} catch (IOException e) {
-					throw new IllegalStateException("Httpd failed to start");
-				}
+				httpd = startHttpd();
 				log(INFO, "Httpd is running on port " + httpd.getListeningPort());
 			}
 			return httpd.getListeningPort();
 		}
 	}
 
-	private NanoHTTPD createHttpd() {
+	private NanoHTTPD startHttpd() {
+		int port = Config.httpdPort;
+		boolean rememberPort = port == 0 && portFile != null;
+		if (rememberPort) {
+			port = readPortFile();
+		}
+		NanoHTTPD httpd = createHttpd(port);
+		try {
+			httpd.start();
+		} catch (IOException e) {
+			if (!rememberPort || port == 0) {
+				throw new IllegalStateException("Httpd failed to start", e);
+			}
+			httpd.stop();
+			log(WARNING, "Port " + port + " of the last launch is unavailable, the transform cache will be rebuilt for a random port");
+			httpd = createHttpd(0);
+			try {
+				httpd.start();
+			} catch (IOException e1) {
+				throw new IllegalStateException("Httpd failed to start", e1);
+			}
+		}
+		if (rememberPort && httpd.getListeningPort() != port) {
+			try {
+				Files.write(portFile, String.valueOf(httpd.getListeningPort()).getBytes(UTF_8));
+			} catch (IOException e) {
+				log(WARNING, "Failed to save the httpd port to " + portFile, e);
+			}
+		}
+		return httpd;
+	}
+
+	private int readPortFile() {
+		try {
+			int port = Integer.parseInt(new String(Files.readAllBytes(portFile), UTF_8).trim());
+			return port > 0 && port <= 0xffff ? port : 0;
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException | NumberFormatException e) {
+			log(DEBUG, "Ignoring malformed httpd port file " + portFile, e);
+			return 0;
+		}
+	}
+
+	private NanoHTTPD createHttpd(int port) {
 		final URLProcessor urlProcessor = this;
-		return new NanoHTTPD("127.0.0.1", Config.httpdPort) {
+		NanoHTTPD httpd = new NanoHTTPD("127.0.0.1", port) {
 			@Override
 			public Response serve(IHTTPSession session) {
 				if (session.getUri().startsWith("/debug/")) {
@@ -139,14 +339,17 @@ public class URLProcessor {
 					for (URLFilter filter : filters) {
 						if (filter.canHandle(domain)) {
 							Optional<Response> result;
+							long t0 = System.nanoTime();
 							try {
 								result = filter.handle(urlProcessor, domain, path, session);
 							} catch (Throwable e) {
+								filterMetrics.get(filter).recordSince(t0, true);
 								log(WARNING, "An error occurred while processing request [" + session.getUri() + "]", e);
 								return Response.newFixedLength(Status.INTERNAL_ERROR, CONTENT_TYPE_TEXT, "Internal Server Error");
 							}
 
 							if (result.isPresent()) {
+								filterMetrics.get(filter).recordSince(t0, false);
 								log(DEBUG, "Request to [" + session.getUri() + "] is handled by [" + filter + "]");
 								return result.get();
 							}
@@ -155,9 +358,13 @@ public class URLProcessor {
 
 					String target = redirector.redirect(domain, path)
 							.orElseGet(() -> protocol + "://" + domain + path);
+					long t0 = System.nanoTime();
 					try {
-						return reverseProxy(session, target);
+						Response response = reverseProxy(session, target);
+						reverseProxyMetrics.recordSince(t0, false);
+						return response;
 					} catch (IOException e) {
+						reverseProxyMetrics.recordSince(t0, true);
 						log(WARNING, "Reverse proxy error", e);
 						return Response.newFixedLength(Status.BAD_GATEWAY, CONTENT_TYPE_TEXT, "Bad Gateway");
 					}
@@ -167,6 +374,19 @@ public class URLProcessor {
 				}
 			}
 		};
+		httpd.setNonBlocking(Config.httpdNonBlocking.isEnabled(false));
+		if (Config.httpdThreads > 0) {
+			httpd.setAsyncRunner(new DefaultAsyncRunner(Config.httpdThreads, Config.httpdQueueSize));
+		} else if (Config.httpdVirtualThreads.isEnabled(true)) {
+			Optional<ThreadFactory> virtualThreads = VirtualThreads.newThreadFactory("NanoHttpd Request Processor #");
+			if (virtualThreads.isPresent()) {
+				log(DEBUG, "Httpd is using virtual threads");
+				httpd.setAsyncRunner(new ThreadPerConnectionAsyncRunner(virtualThreads.get()));
+			} else if (Config.httpdVirtualThreads == FeatureOption.ENABLED) {
+				log(WARNING, "Virtual threads are not supported by this JVM, falling back to platform threads");
+			}
+		}
+		return httpd;
 	}
 
 	private static final Set<String> ignoredHeaders = new HashSet<>(Arrays.asList("host", "expect", "connection", "keep-alive", "transfer-encoding"));
@@ -184,30 +404,39 @@ public class URLProcessor {
 
 		log(DEBUG, "Reverse proxy: > " + method + " " + url + ", headers: " + requestHeaders);
 
-		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-		conn.setRequestMethod(method);
-		conn.setDoOutput(clientIn != null);
-		requestHeaders.forEach(conn::setRequestProperty);
-
-		if (clientIn != null && !method.equalsIgnoreCase("GET") && !method.equalsIgnoreCase("HEAD")) {
-			try (OutputStream upstreamOut = conn.getOutputStream()) {
-				transfer(clientIn, upstreamOut);
-			}
-		}
-
-		int responseCode = conn.getResponseCode();
-		String reponseMessage = conn.getResponseMessage();
+		UpstreamClient.Exchange exchange = upstreamClient.open(method, url, null);
+		HttpURLConnection conn = exchange.getConnection();
+		int responseCode;
+		String reponseMessage;
 		Map<String, List<String>> responseHeaders = new LinkedHashMap<>();
-		conn.getHeaderFields().forEach((name, values) -> {
-			if (name != null && !ignoredHeaders.contains(name.toLowerCase())) {
-				responseHeaders.put(name, values);
-			}
-		});
 		InputStream upstreamIn;
 		try {
-			upstreamIn = conn.getInputStream();
-		} catch (IOException e) {
-			upstreamIn = conn.getErrorStream();
+			conn.setDoOutput(clientIn != null);
+			requestHeaders.forEach(conn::setRequestProperty);
+
+			if (clientIn != null && !method.equalsIgnoreCase("GET") && !method.equalsIgnoreCase("HEAD")) {
+				try (OutputStream upstreamOut = conn.getOutputStream()) {
+					transfer(new CountingInputStream(clientIn, reverseProxyBytesSent), upstreamOut);
+				}
+			}
+
+			responseCode = conn.getResponseCode();
+			reponseMessage = conn.getResponseMessage();
+			conn.getHeaderFields().forEach((name, values) -> {
+				if (name != null && !ignoredHeaders.contains(name.toLowerCase())) {
+					responseHeaders.put(name, values);
+				}
+			});
+			// the exchange is closed along with the body, after the response has been sent
+			upstreamIn = exchange.getResponseBody();
+		} catch (IOException | RuntimeException e) {
+			exchange.close();
+			throw e;
+		}
+		if (upstreamIn == null) {
+			exchange.close();
+		} else {
+			upstreamIn = new CountingInputStream(upstreamIn, reverseProxyBytesReceived);
 		}
 		log(DEBUG, "Reverse proxy: < " + responseCode + " " + reponseMessage + " , headers: " + responseHeaders);
 
@@ -246,4 +475,39 @@ public class URLProcessor {
 
 		return response;
 	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private final LongAdder counter;
+
+		CountingInputStream(InputStream in, LongAdder counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				counter.increment();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				counter.add(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			counter.add(skipped);
+			return skipped;
+		}
+	}
 }
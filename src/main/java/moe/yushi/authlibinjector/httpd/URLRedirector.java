@@ -17,6 +17,7 @@
 package moe.yushi.authlibinjector.httpd;
 
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * A URLRedirector modifies the URLs found in the bytecode,
@@ -24,4 +25,12 @@ import java.util.Optional;
  */
 public interface URLRedirector {
 	Optional<String> redirect(String domain, String path);
+
+	/**
+	 * Returns all the domains that redirect() may redirect,
+	 * or empty if they can't be enumerated.
+	 */
+	default Optional<Set<String>> getRedirectedDomains() {
+		return Optional.empty();
+	}
 }
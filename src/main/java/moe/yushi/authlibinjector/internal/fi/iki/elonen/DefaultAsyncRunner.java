@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves connections on a pool of daemon threads.
+ * <p>
+ * The pool is either unbounded, in which case idle threads are reused and no connection ever waits,
+ * or bounded, in which case connections wait in a bounded queue once all the threads are busy,
+ * and are closed once the queue is full as well.
+ * Note that a connection holds its thread while it's kept alive.
+ */
+public class DefaultAsyncRunner implements IAsyncRunner {
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+	private final ThreadPoolExecutor executor;
+	private final int maxThreads;
+	private final int queueCapacity;
+	private final LongAdder rejectedConnections = new LongAdder();
+
+	/**
+	 * Creates an unbounded pool.
+	 */
+	public DefaultAsyncRunner() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param maxThreads the maximum number of threads, or 0 for unbounded
+	 * @param queueCapacity the maximum number of connections waiting for a thread; ignored if the pool is unbounded
+	 */
+	public DefaultAsyncRunner(int maxThreads, int queueCapacity) {
+		if (maxThreads < 0 || queueCapacity < 0) {
+			throw new IllegalArgumentException("maxThreads=" + maxThreads + ", queueCapacity=" + queueCapacity);
+		}
+		this.maxThreads = maxThreads;
+		this.queueCapacity = maxThreads == 0 ? 0 : queueCapacity;
+
+		BlockingQueue<Runnable> queue = this.queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(this.queueCapacity);
+		if (maxThreads == 0) {
+			executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, this::newThread);
+		} else {
+			executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, this::newThread);
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	private Thread newThread(Runnable r) {
+		Thread t = new Thread(r);
+		t.setDaemon(true);
+		t.setName("NanoHttpd Request Processor (#" + this.requestCount.incrementAndGet() + ")");
+		return t;
+	}
+
+	@Override
+	public void closeAll() {
+		for (NanoHTTPD.ClientHandler clientHandler : this.running) {
+			clientHandler.close();
+		}
+	}
+
+	@Override
+	public void closed(NanoHTTPD.ClientHandler clientHandler) {
+		this.running.remove(clientHandler);
+	}
+
+	@Override
+	public void exec(NanoHTTPD.ClientHandler clientHandler) {
+		this.running.add(clientHandler);
+		try {
+			this.executor.execute(clientHandler);
+		} catch (RejectedExecutionException e) {
+			this.rejectedConnections.increment();
+			log(DEBUG, "Too many connections, closing the new one");
+			this.running.remove(clientHandler);
+			clientHandler.close();
+		}
+	}
+
+	@Override
+	public int getOpenConnections() {
+		return this.running.size();
+	}
+
+	/**
+	 * Returns the maximum number of threads, or 0 if the pool is unbounded.
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Returns the number of threads in the pool, including the idle ones.
+	 */
+	public int getPoolSize() {
+		return executor.getPoolSize();
+	}
+
+	/**
+	 * Returns the number of threads that are serving connections.
+	 */
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of connections waiting for a thread.
+	 */
+	public int getQueuedConnections() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of connections closed because the pool and the queue were full.
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections.sum();
+	}
+}
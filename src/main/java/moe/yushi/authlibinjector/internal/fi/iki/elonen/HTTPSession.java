@@ -51,11 +51,8 @@ import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
@@ -63,6 +60,7 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -88,6 +86,9 @@ class HTTPSession implements IHTTPSession {
 	private Map<String, String> headers;
 	private String protocolVersion;
 
+	// reused by every request on this connection
+	private final byte[] headerBuf = new byte[BUFSIZE];
+
 	private InputStream parsedInputStream;
 
 	private boolean expect100Continue;
@@ -101,13 +102,13 @@ class HTTPSession implements IHTTPSession {
 		this.remoteAddr = remoteAddr;
 	}
 
-	private ByteArrayInputStream readHeader() throws IOException {
+	private int readHeader() throws IOException {
 		// Read the first 8192 bytes.
 		// The full header should fit in here.
 		// Apache's default header limit is 8KB.
 		// Do NOT assume that a single read will get the entire header
 		// at once!
-		byte[] buf = new byte[BUFSIZE];
+		byte[] buf = this.headerBuf;
 		int splitbyte = 0;
 		int rlen = 0;
 
@@ -140,72 +141,76 @@ class HTTPSession implements IHTTPSession {
 			this.inputStream.skip(splitbyte);
 		}
 
-		return new ByteArrayInputStream(buf, 0, rlen);
+		return splitbyte > 0 ? splitbyte : rlen;
 	}
 
-	private void parseHeader(BufferedReader in) throws ResponseException {
-		try {
-			String requestLine = in.readLine();
-			if (requestLine == null) {
-				throw new ResponseException(Status.BAD_REQUEST, "BAD REQUEST: Syntax error.");
-			}
-
-			StringTokenizer st = new StringTokenizer(requestLine);
-			if (!st.hasMoreTokens()) {
-				throw new ResponseException(Status.BAD_REQUEST, "BAD REQUEST: Syntax error.");
-			}
-
-			this.method = st.nextToken();
+	/**
+	 * Parses the request line and the headers directly from the bytes.
+	 * Lines end with CR, LF or CRLF, and the header ends at the first blank line.
+	 */
+	private void parseHeader(byte[] buf, int len) throws ResponseException {
+		int lineEnd = findLineEnd(buf, 0, len);
 
-			if (!st.hasMoreTokens()) {
-				throw new ResponseException(Status.BAD_REQUEST, "BAD REQUEST: Missing URI.");
-			}
+		int pos = skipWhitespace(buf, 0, lineEnd);
+		if (pos == lineEnd) {
+			throw new ResponseException(Status.BAD_REQUEST, "BAD REQUEST: Syntax error.");
+		}
+		int tokenEnd = findTokenEnd(buf, pos, lineEnd);
+		this.method = toMethod(buf, pos, tokenEnd);
 
-			String rawUri = st.nextToken();
+		pos = skipWhitespace(buf, tokenEnd, lineEnd);
+		if (pos == lineEnd) {
+			throw new ResponseException(Status.BAD_REQUEST, "BAD REQUEST: Missing URI.");
+		}
+		tokenEnd = findTokenEnd(buf, pos, lineEnd);
+
+		// Decode parameters from the URI
+		int qmi = indexOf(buf, pos, tokenEnd, '?');
+		if (qmi >= 0) {
+			this.queryParameterString = new String(buf, qmi + 1, tokenEnd - qmi - 1, ISO_8859_1);
+			this.parms = Collections.unmodifiableMap(decodeParms(this.queryParameterString));
+			this.uri = decodePercent(buf, pos, qmi);
+		} else {
+			this.queryParameterString = null;
+			this.parms = Collections.emptyMap();
+			this.uri = decodePercent(buf, pos, tokenEnd);
+		}
 
-			// Decode parameters from the URI
-			int qmi = rawUri.indexOf('?');
-			if (qmi >= 0) {
-				this.queryParameterString = rawUri.substring(qmi + 1);
-				this.parms = Collections.unmodifiableMap(decodeParms(this.queryParameterString));
-				this.uri = decodePercent(rawUri.substring(0, qmi));
-			} else {
-				this.queryParameterString = null;
-				this.parms = Collections.emptyMap();
-				this.uri = decodePercent(rawUri);
-			}
+		// If there's another token, its protocol version,
+		// followed by HTTP headers.
+		pos = skipWhitespace(buf, tokenEnd, lineEnd);
+		if (pos < lineEnd) {
+			this.protocolVersion = toProtocolVersion(buf, pos, findTokenEnd(buf, pos, lineEnd));
+		} else {
+			this.protocolVersion = "HTTP/1.1";
+			log(DEBUG, "no protocol version specified, strange. Assuming HTTP/1.1.");
+		}
 
-			// If there's another token, its protocol version,
-			// followed by HTTP headers.
-			// NOTE: this now forces header names lower case since they are
-			// case insensitive and vary by client.
-			if (st.hasMoreTokens()) {
-				this.protocolVersion = st.nextToken();
-			} else {
-				this.protocolVersion = "HTTP/1.1";
-				log(DEBUG, "no protocol version specified, strange. Assuming HTTP/1.1.");
+		// NOTE: this now forces header names lower case since they are
+		// case insensitive and vary by client.
+		Map<String, String> headers = new LinkedHashMap<>();
+		int lineStart = nextLine(buf, lineEnd, len);
+		while (lineStart < len) {
+			lineEnd = findLineEnd(buf, lineStart, len);
+			int nameStart = trimStart(buf, lineStart, lineEnd);
+			if (nameStart == lineEnd) {
+				break;
 			}
-
-			Map<String, String> headers = new LinkedHashMap<>();
-			String line = in.readLine();
-			while (line != null && !line.trim().isEmpty()) {
-				int p = line.indexOf(':');
-				if (p >= 0) {
-					headers.put(line.substring(0, p).trim().toLowerCase(Locale.ROOT), line.substring(p + 1).trim());
-				}
-				line = in.readLine();
+			int colon = indexOf(buf, nameStart, lineEnd, ':');
+			if (colon >= 0) {
+				int valueStart = trimStart(buf, colon + 1, lineEnd);
+				int valueEnd = trimEnd(buf, valueStart, lineEnd);
+				headers.put(toHeaderName(buf, nameStart, trimEnd(buf, nameStart, colon)), new String(buf, valueStart, valueEnd - valueStart, ISO_8859_1));
 			}
-			this.headers = Collections.unmodifiableMap(headers);
-
-		} catch (IOException ioe) {
-			throw new ResponseException(Status.INTERNAL_ERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage(), ioe);
+			lineStart = nextLine(buf, lineEnd, len);
 		}
+		this.headers = Collections.unmodifiableMap(headers);
 	}
 
 	public void execute(Function<IHTTPSession, Response> handler) throws IOException {
 		Response r = null;
 		try {
-			parseHeader(new BufferedReader(new InputStreamReader(readHeader(), ISO_8859_1)));
+			parseHeader(this.headerBuf, readHeader());
 
 			String transferEncoding = this.headers.get("transfer-encoding");
 			String contentLengthStr = this.headers.get("content-length");
@@ -289,6 +294,23 @@ class HTTPSession implements IHTTPSession {
 		}
 	}
 
+	/**
+	 * Reads the bytes that are available without blocking, up to {@link #BUFSIZE}.
+	 * These are the beginning of the next request, if the client has already sent it.
+	 */
+	byte[] drainBuffered() throws IOException {
+		byte[] buf = new byte[Math.min(this.inputStream.available(), BUFSIZE)];
+		int read = 0;
+		while (read < buf.length) {
+			int n = this.inputStream.read(buf, read, buf.length - read);
+			if (n == -1) {
+				break;
+			}
+			read += n;
+		}
+		return read == buf.length ? buf : Arrays.copyOf(buf, read);
+	}
+
 	@Override
 	public final Map<String, String> getHeaders() {
 		return this.headers;
@@ -337,7 +359,7 @@ class HTTPSession implements IHTTPSession {
 	 * Find byte index separating header from body. It must be the last byte
 	 * of the first two sequential new lines.
 	 */
-	private static int findHeaderEnd(final byte[] buf, int rlen) {
+	static int findHeaderEnd(final byte[] buf, int rlen) {
 		int splitbyte = 0;
 		while (splitbyte + 1 < rlen) {
 
@@ -355,6 +377,122 @@ class HTTPSession implements IHTTPSession {
 		return 0;
 	}
 
+	private static final String[] KNOWN_METHODS = { "GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "PATCH" };
+	private static final String[] KNOWN_PROTOCOL_VERSIONS = { "HTTP/1.1", "HTTP/1.0" };
+
+	// lower case
+	private static final String[] KNOWN_HEADERS = {
+			"host", "user-agent", "accept", "accept-encoding", "accept-language", "accept-charset",
+			"connection", "keep-alive", "content-length", "content-type", "transfer-encoding", "expect",
+			"authorization", "cookie", "cache-control", "pragma", "origin", "referer", "upgrade"
+	};
+
+	private static boolean isWhitespace(byte b) {
+		// the same as the default delimiters of StringTokenizer
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+
+	private static int skipWhitespace(byte[] buf, int from, int to) {
+		while (from < to && isWhitespace(buf[from])) {
+			from++;
+		}
+		return from;
+	}
+
+	private static int findTokenEnd(byte[] buf, int from, int to) {
+		while (from < to && !isWhitespace(buf[from])) {
+			from++;
+		}
+		return from;
+	}
+
+	// String.trim() treats every character <= ' ' as whitespace
+	private static int trimStart(byte[] buf, int from, int to) {
+		while (from < to && (buf[from] & 0xff) <= ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	private static int trimEnd(byte[] buf, int from, int to) {
+		while (to > from && (buf[to - 1] & 0xff) <= ' ') {
+			to--;
+		}
+		return to;
+	}
+
+	private static int indexOf(byte[] buf, int from, int to, char c) {
+		for (int i = from; i < to; i++) {
+			if (buf[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int findLineEnd(byte[] buf, int from, int to) {
+		while (from < to && buf[from] != '\r' && buf[from] != '\n') {
+			from++;
+		}
+		return from;
+	}
+
+	private static int nextLine(byte[] buf, int lineEnd, int to) {
+		if (lineEnd + 1 < to && buf[lineEnd] == '\r' && buf[lineEnd + 1] == '\n') {
+			return lineEnd + 2;
+		}
+		return lineEnd + 1;
+	}
+
+	private static /* nullable */ String findKnown(String[] candidates, byte[] buf, int from, int to, boolean ignoreCase) {
+		int length = to - from;
+		outer: for (String candidate : candidates) {
+			if (candidate.length() != length) {
+				continue;
+			}
+			for (int i = 0; i < length; i++) {
+				int b = buf[from + i];
+				if (ignoreCase && b >= 'A' && b <= 'Z') {
+					b += 'a' - 'A';
+				}
+				if (b != candidate.charAt(i)) {
+					continue outer;
+				}
+			}
+			return candidate;
+		}
+		return null;
+	}
+
+	private static String toMethod(byte[] buf, int from, int to) {
+		String known = findKnown(KNOWN_METHODS, buf, from, to, false);
+		return known != null ? known : new String(buf, from, to - from, ISO_8859_1);
+	}
+
+	private static String toProtocolVersion(byte[] buf, int from, int to) {
+		String known = findKnown(KNOWN_PROTOCOL_VERSIONS, buf, from, to, false);
+		return known != null ? known : new String(buf, from, to - from, ISO_8859_1);
+	}
+
+	private static String toHeaderName(byte[] buf, int from, int to) {
+		String known = findKnown(KNOWN_HEADERS, buf, from, to, true);
+		return known != null ? known : new String(buf, from, to - from, ISO_8859_1).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Decodes the percent encoded URI in the given range.
+	 * Most URIs contain nothing to decode, and are copied as is.
+	 */
+	private static String decodePercent(byte[] buf, int from, int to) {
+		String str = new String(buf, from, to - from, ISO_8859_1);
+		for (int i = from; i < to; i++) {
+			if (buf[i] == '%' || buf[i] == '+') {
+				return decodePercent(str);
+			}
+		}
+		return str;
+	}
+
 	/**
 	 * Decode percent encoded <code>String</code> values.
 	 *
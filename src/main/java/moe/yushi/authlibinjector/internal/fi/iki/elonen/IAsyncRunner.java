@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+/**
+ * Threading strategy of {@link NanoHTTPD}.
+ */
+public interface IAsyncRunner {
+
+	/**
+	 * Runs the given handler, which serves a client connection until it's closed.
+	 */
+	void exec(NanoHTTPD.ClientHandler clientHandler);
+
+	/**
+	 * Called by the handler when its connection is closed.
+	 */
+	void closed(NanoHTTPD.ClientHandler clientHandler);
+
+	/**
+	 * Closes all the open connections.
+	 */
+	void closeAll();
+
+	/**
+	 * Returns the number of open connections.
+	 */
+	int getOpenConnections();
+}
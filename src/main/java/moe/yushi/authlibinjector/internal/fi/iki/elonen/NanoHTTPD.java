@@ -57,9 +57,7 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicLong;
+import java.nio.channels.ServerSocketChannel;
 import moe.yushi.authlibinjector.internal.fi.iki.elonen.HTTPSession.ConnectionCloseException;
 
 /**
@@ -78,15 +76,19 @@ public abstract class NanoHTTPD {
 	/**
 	 * The runnable that will be used for every new client connection.
 	 */
-	private class ClientHandler implements Runnable {
+	public class ClientHandler implements Runnable {
 
 		private final InputStream inputStream;
 
 		private final Socket acceptSocket;
 
-		public ClientHandler(InputStream inputStream, Socket acceptSocket) {
+		// if not null, only one request is served, and the connection is parked afterwards
+		private final /* nullable */ SelectorFrontEnd.Connection connection;
+
+		ClientHandler(InputStream inputStream, Socket acceptSocket, /* nullable */ SelectorFrontEnd.Connection connection) {
 			this.inputStream = inputStream;
 			this.acceptSocket = acceptSocket;
+			this.connection = connection;
 		}
 
 		public void close() {
@@ -97,11 +99,26 @@ public abstract class NanoHTTPD {
 		@Override
 		public void run() {
 			OutputStream outputStream = null;
+			boolean parked = false;
 			try {
 				outputStream = this.acceptSocket.getOutputStream();
-				HTTPSession session = new HTTPSession(this.inputStream, outputStream, (InetSocketAddress) this.acceptSocket.getRemoteSocketAddress());
-				while (!this.acceptSocket.isClosed()) {
+				if (this.connection == null) {
+					HTTPSession session = new HTTPSession(this.inputStream, outputStream, (InetSocketAddress) this.acceptSocket.getRemoteSocketAddress());
+					while (!this.acceptSocket.isClosed()) {
+						session.execute(NanoHTTPD.this::serve);
+					}
+				} else {
+					// keep the session (and its header buffer) across the requests of a parked connection
+					HTTPSession session = this.connection.session;
+					if (session == null) {
+						session = new HTTPSession(this.inputStream, outputStream, (InetSocketAddress) this.acceptSocket.getRemoteSocketAddress());
+						this.connection.session = session;
+					}
 					session.execute(NanoHTTPD.this::serve);
+					if (!this.acceptSocket.isClosed()) {
+						this.connection.park(session.drainBuffered());
+						parked = true;
+					}
 				}
 			} catch (ConnectionCloseException e) {
 				// When the socket is closed by the client,
@@ -114,59 +131,21 @@ public abstract class NanoHTTPD {
 			} catch (Exception e) {
 				log(ERROR, "Communication with the client broken, or an bug in the handler code", e);
 			} finally {
-				safeClose(outputStream);
-				safeClose(this.inputStream);
-				safeClose(this.acceptSocket);
+				if (!parked) {
+					safeClose(outputStream);
+					safeClose(this.inputStream);
+					safeClose(this.acceptSocket);
+				}
 				NanoHTTPD.this.asyncRunner.closed(this);
 			}
 		}
 	}
 
-	/**
-	 * Default threading strategy for NanoHTTPD.
-	 * <p/>
-	 * <p>
-	 * By default, the server spawns a new Thread for every incoming request.
-	 * These are set to <i>daemon</i> status, and named according to the request
-	 * number. The name is useful when profiling the application.
-	 * </p>
-	 */
-	private static class AsyncRunner {
-
-		private final AtomicLong requestCount = new AtomicLong();
-		private final List<ClientHandler> running = new CopyOnWriteArrayList<>();
-
-		public void closeAll() {
-			for (ClientHandler clientHandler : this.running) {
-				clientHandler.close();
-			}
-		}
-
-		public void closed(ClientHandler clientHandler) {
-			this.running.remove(clientHandler);
-		}
-
-		public void exec(ClientHandler clientHandler) {
-			Thread t = new Thread(clientHandler);
-			t.setDaemon(true);
-			t.setName("NanoHttpd Request Processor (#" + this.requestCount.incrementAndGet() + ")");
-			this.running.add(clientHandler);
-			t.start();
-		}
-	}
-
 	/**
 	 * The runnable that will be used for the main listening thread.
 	 */
 	private class ServerRunnable implements Runnable {
 
-		/**
-		 * Maximum time to wait on Socket.getInputStream().read() (in milliseconds)
-		 * This is required as the Keep-Alive HTTP connections would otherwise block
-		 * the socket reading thread forever (or as long the browser is open).
-		 */
-		private static final int SOCKET_READ_TIMEOUT = 5000;
-
 		private IOException bindException;
 
 		private boolean hasBinded = false;
@@ -180,6 +159,10 @@ public abstract class NanoHTTPD {
 				this.bindException = e;
 				return;
 			}
+			if (selectorFrontEnd != null) {
+				selectorFrontEnd.run();
+				return;
+			}
 			do {
 				try {
 					@SuppressWarnings("resource")
@@ -187,7 +170,7 @@ public abstract class NanoHTTPD {
 					finalAccept.setSoTimeout(SOCKET_READ_TIMEOUT);
 					@SuppressWarnings("resource")
 					final InputStream inputStream = finalAccept.getInputStream();
-					NanoHTTPD.this.asyncRunner.exec(new ClientHandler(inputStream, finalAccept));
+					NanoHTTPD.this.asyncRunner.exec(new ClientHandler(inputStream, finalAccept, null));
 				} catch (IOException e) {
 					log(DEBUG, "Communication with the client broken", e);
 				}
@@ -195,6 +178,13 @@ public abstract class NanoHTTPD {
 		}
 	}
 
+	/**
+	 * Maximum time to wait on Socket.getInputStream().read() (in milliseconds)
+	 * This is required as the Keep-Alive HTTP connections would otherwise block
+	 * the socket reading thread forever (or as long the browser is open).
+	 */
+	static final int SOCKET_READ_TIMEOUT = 5000;
+
 	static final void safeClose(Object closeable) {
 		try {
 			if (closeable != null) {
@@ -219,7 +209,9 @@ public abstract class NanoHTTPD {
 	private volatile ServerSocket serverSocket;
 	private Thread listenerThread;
 
-	private final AsyncRunner asyncRunner = new AsyncRunner();
+	private IAsyncRunner asyncRunner = new DefaultAsyncRunner();
+	private boolean nonBlocking;
+	private volatile SelectorFrontEnd selectorFrontEnd;
 
 	/**
 	 * Constructs an HTTP server on given port.
@@ -244,6 +236,38 @@ public abstract class NanoHTTPD {
 		this.port = port;
 	}
 
+	/**
+	 * Sets the threading strategy. Must be called before {@link #start()}.
+	 */
+	public void setAsyncRunner(IAsyncRunner asyncRunner) {
+		this.asyncRunner = asyncRunner;
+	}
+
+	public IAsyncRunner getAsyncRunner() {
+		return asyncRunner;
+	}
+
+	/**
+	 * Enables the non-blocking front end, which parks idle connections without a thread.
+	 * Must be called before {@link #start()}.
+	 */
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
+
+	public boolean isNonBlocking() {
+		return nonBlocking;
+	}
+
+	/**
+	 * Returns the number of connections waiting for a request without a thread.
+	 * Always 0 if the non-blocking front end is disabled.
+	 */
+	public int getParkedConnections() {
+		SelectorFrontEnd frontEnd = this.selectorFrontEnd;
+		return frontEnd == null ? 0 : frontEnd.getParkedConnections();
+	}
+
 	public final int getListeningPort() {
 		return this.serverSocket == null ? -1 : this.serverSocket.getLocalPort();
 	}
@@ -286,7 +310,13 @@ public abstract class NanoHTTPD {
 	 *                     if the socket is in use.
 	 */
 	public void start(boolean daemon) throws IOException {
-		this.serverSocket = new ServerSocket();
+		if (this.nonBlocking) {
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			this.serverSocket = serverChannel.socket();
+			this.selectorFrontEnd = new SelectorFrontEnd(this, serverChannel);
+		} else {
+			this.serverSocket = new ServerSocket();
+		}
 		this.serverSocket.setReuseAddress(true);
 
 		ServerRunnable serverRunnable = new ServerRunnable();
@@ -314,6 +344,9 @@ public abstract class NanoHTTPD {
 	public void stop() {
 		try {
 			safeClose(this.serverSocket);
+			if (this.selectorFrontEnd != null) {
+				this.selectorFrontEnd.wakeup();
+			}
 			this.asyncRunner.closeAll();
 			if (this.listenerThread != null) {
 				this.listenerThread.join();
@@ -46,6 +46,7 @@
  */
 package moe.yushi.authlibinjector.internal.fi.iki.elonen;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.util.Objects.requireNonNull;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.ERROR;
@@ -66,12 +67,18 @@ import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import moe.yushi.authlibinjector.util.BufferPool;
 
 /**
  * HTTP response. Return one of these from serve().
  */
 public class Response implements Closeable {
 
+	// room for the chunk size in hex followed by CRLF
+	private static final int CHUNK_HEADER_SPACE = 10;
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(US_ASCII);
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(US_ASCII);
+
 	/**
 	 * HTTP status code after processing, e.g. "200 OK", Status.OK
 	 */
@@ -218,13 +225,15 @@ public class Response implements Closeable {
 	}
 
 	private void sendBodyWithCorrectTransferAndEncoding(OutputStream outputStream, long pending) throws IOException {
-		if (!"HEAD".equals(this.requestMethod) && this.chunkedTransfer) {
-			@SuppressWarnings("resource")
-			ChunkedOutputStream chunkedOutputStream = new ChunkedOutputStream(outputStream);
-			sendBody(chunkedOutputStream, -1);
-			chunkedOutputStream.finish();
-		} else {
-			sendBody(outputStream, pending);
+		byte[] buf = BufferPool.acquire();
+		try {
+			if (!"HEAD".equals(this.requestMethod) && this.chunkedTransfer) {
+				sendChunkedBody(outputStream, buf);
+			} else {
+				sendBody(outputStream, pending, buf);
+			}
+		} finally {
+			BufferPool.release(buf);
 		}
 	}
 
@@ -238,26 +247,53 @@ public class Response implements Closeable {
 	 * @param pending
 	 *                     -1 to send everything, otherwise sets a max limit to the
 	 *                     number of bytes sent
+	 * @param buf
+	 *                     the transfer buffer
 	 * @throws IOException
 	 *                     if something goes wrong while sending the data.
 	 */
-	private void sendBody(OutputStream outputStream, long pending) throws IOException {
-		long BUFFER_SIZE = 16 * 1024;
-		byte[] buff = new byte[(int) BUFFER_SIZE];
+	private void sendBody(OutputStream outputStream, long pending, byte[] buf) throws IOException {
 		boolean sendEverything = pending == -1;
 		while (pending > 0 || sendEverything) {
-			long bytesToRead = sendEverything ? BUFFER_SIZE : Math.min(pending, BUFFER_SIZE);
-			int read = this.data.read(buff, 0, (int) bytesToRead);
+			int bytesToRead = sendEverything ? buf.length : (int) Math.min(pending, buf.length);
+			int read = this.data.read(buf, 0, bytesToRead);
 			if (read <= 0) {
 				break;
 			}
-			outputStream.write(buff, 0, read);
+			outputStream.write(buf, 0, read);
 			if (!sendEverything) {
 				pending -= read;
 			}
 		}
 	}
 
+	/**
+	 * Sends the body using chunked transfer:
+	 * http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html#sec3.6.1
+	 *
+	 * Each chunk is framed in place in the buffer, so that it goes to the socket in a single write.
+	 */
+	private void sendChunkedBody(OutputStream outputStream, byte[] buf) throws IOException {
+		int maxChunkSize = buf.length - CHUNK_HEADER_SPACE - 2;
+		int read;
+		while ((read = this.data.read(buf, CHUNK_HEADER_SPACE, maxChunkSize)) > 0) {
+			// [chunk size in hex] CRLF [data] CRLF
+			int start = CHUNK_HEADER_SPACE;
+			buf[--start] = '\n';
+			buf[--start] = '\r';
+			int size = read;
+			do {
+				buf[--start] = HEX_DIGITS[size & 0xf];
+				size >>>= 4;
+			} while (size != 0);
+			int end = CHUNK_HEADER_SPACE + read;
+			buf[end++] = '\r';
+			buf[end++] = '\n';
+			outputStream.write(buf, start, end - start);
+		}
+		outputStream.write(LAST_CHUNK);
+	}
+
 	public void setChunkedTransfer(boolean chunkedTransfer) {
 		this.chunkedTransfer = chunkedTransfer;
 	}
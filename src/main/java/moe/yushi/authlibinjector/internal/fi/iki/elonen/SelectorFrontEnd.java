@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import static moe.yushi.authlibinjector.util.Logging.Level.ERROR;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking front end of {@link NanoHTTPD}.
+ * <p>
+ * Connections are parked on a selector until a full request header has arrived,
+ * and only then dispatched to the {@link IAsyncRunner}, which serves a single request
+ * in blocking mode and parks the connection again if it's kept alive.
+ * Thus idle keep-alive connections don't hold any thread.
+ */
+class SelectorFrontEnd implements Runnable {
+
+	/**
+	 * Parked connections that don't send a complete request header within this time (in milliseconds) are closed.
+	 */
+	static final int IDLE_TIMEOUT = 30000;
+
+	private static final int SELECT_TIMEOUT = 1000;
+
+	/**
+	 * A client connection, which is either parked on the selector, or being served by a worker.
+	 */
+	class Connection {
+
+		private final SocketChannel channel;
+		// the bytes of the next request that have been read
+		private final ByteBuffer buffer = ByteBuffer.allocate(HTTPSession.BUFSIZE);
+		// how many bytes of the buffer have been consumed by the worker
+		private int bufferConsumed;
+		private long lastActivity;
+
+		// created on the first dispatch, and reused by every request on this connection
+		private /* nullable */ InputStream inputStream;
+		/* nullable */ HTTPSession session;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Returns a stream that reads the buffered bytes first, and then the socket.
+		 * Must be called when the channel is in blocking mode.
+		 */
+		private InputStream getInputStream() throws IOException {
+			if (inputStream == null) {
+				InputStream socketIn = channel.socket().getInputStream();
+				inputStream = new InputStream() {
+					@Override
+					public int read() throws IOException {
+						if (bufferConsumed < buffer.position()) {
+							return buffer.array()[bufferConsumed++] & 0xff;
+						}
+						return socketIn.read();
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int buffered = buffer.position() - bufferConsumed;
+						if (buffered > 0) {
+							int n = Math.min(buffered, len);
+							System.arraycopy(buffer.array(), bufferConsumed, b, off, n);
+							bufferConsumed += n;
+							return n;
+						}
+						return socketIn.read(b, off, len);
+					}
+
+					@Override
+					public int available() throws IOException {
+						return buffer.position() - bufferConsumed + socketIn.available();
+					}
+
+					@Override
+					public void close() throws IOException {
+						socketIn.close();
+					}
+				};
+			}
+			return inputStream;
+		}
+
+		/**
+		 * Called by the worker after a request is served, to park the connection again.
+		 *
+		 * @param leftover the bytes of the next request that the worker has read
+		 */
+		void park(byte[] leftover) throws IOException {
+			if (!serverChannel.isOpen()) {
+				close();
+				return;
+			}
+			channel.configureBlocking(false);
+			buffer.clear();
+			buffer.put(leftover);
+			bufferConsumed = 0;
+			pending.add(this);
+			selector.wakeup();
+		}
+
+		private void close() {
+			NanoHTTPD.safeClose(channel);
+		}
+	}
+
+	private final NanoHTTPD httpd;
+	private final ServerSocketChannel serverChannel;
+	private final Selector selector;
+	private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger parkedConnections = new AtomicInteger();
+
+	SelectorFrontEnd(NanoHTTPD httpd, ServerSocketChannel serverChannel) throws IOException {
+		this.httpd = httpd;
+		this.serverChannel = serverChannel;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Returns the number of connections waiting for a request, without a thread.
+	 */
+	int getParkedConnections() {
+		return parkedConnections.get();
+	}
+
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+			List<Connection> ready = new ArrayList<>();
+			while (serverChannel.isOpen()) {
+				selector.select(SELECT_TIMEOUT);
+				registerPending(ready);
+				processSelectedKeys(ready);
+				while (!ready.isEmpty()) {
+					// complete the deregistration of the cancelled keys, so that the channels can be switched to blocking mode
+					selector.selectNow();
+					for (Connection connection : ready) {
+						dispatch(connection);
+					}
+					ready.clear();
+					processSelectedKeys(ready);
+				}
+				closeIdleConnections();
+			}
+		} catch (ClosedSelectorException e) {
+			// stopped
+		} catch (IOException e) {
+			log(ERROR, "Selector failure", e);
+		} finally {
+			closeAll();
+		}
+	}
+
+	private void registerPending(List<Connection> ready) throws IOException {
+		Connection connection;
+		while ((connection = pending.poll()) != null) {
+			connection.lastActivity = System.currentTimeMillis();
+			if (HTTPSession.findHeaderEnd(connection.buffer.array(), connection.buffer.position()) > 0) {
+				// a pipelined request
+				ready.add(connection);
+				continue;
+			}
+			try {
+				connection.channel.register(selector, SelectionKey.OP_READ, connection);
+				parkedConnections.incrementAndGet();
+			} catch (IOException e) {
+				connection.close();
+			}
+		}
+	}
+
+	private void processSelectedKeys(List<Connection> ready) {
+		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			SelectionKey key = it.next();
+			it.remove();
+			if (!key.isValid()) {
+				continue;
+			}
+			if (key.isAcceptable()) {
+				accept();
+			} else if (key.isReadable()) {
+				Connection connection = (Connection) key.attachment();
+				if (read(connection)) {
+					key.cancel();
+					parkedConnections.decrementAndGet();
+					ready.add(connection);
+				} else if (!connection.channel.isOpen()) {
+					parkedConnections.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	private void accept() {
+		SocketChannel channel;
+		try {
+			while ((channel = serverChannel.accept()) != null) {
+				Connection connection = new Connection(channel);
+				try {
+					channel.socket().setSoTimeout(NanoHTTPD.SOCKET_READ_TIMEOUT);
+					channel.configureBlocking(false);
+					connection.lastActivity = System.currentTimeMillis();
+					channel.register(selector, SelectionKey.OP_READ, connection);
+					parkedConnections.incrementAndGet();
+				} catch (IOException e) {
+					log(DEBUG, "Communication with the client broken", e);
+					connection.close();
+				}
+			}
+		} catch (IOException e) {
+			log(DEBUG, "Communication with the client broken", e);
+		}
+	}
+
+	/**
+	 * Reads the available bytes of the connection.
+	 *
+	 * @return true if a full request header has been read, or there's no more room for it
+	 */
+	private boolean read(Connection connection) {
+		ByteBuffer buffer = connection.buffer;
+		int read;
+		try {
+			read = connection.channel.read(buffer);
+		} catch (IOException e) {
+			log(DEBUG, "Communication with the client broken", e);
+			connection.close();
+			return false;
+		}
+		if (read == -1) {
+			connection.close();
+			return false;
+		}
+		connection.lastActivity = System.currentTimeMillis();
+		// the header is parsed by HTTPSession, we only need to know whether it's complete
+		return !buffer.hasRemaining() || HTTPSession.findHeaderEnd(buffer.array(), buffer.position()) > 0;
+	}
+
+	private void dispatch(Connection connection) {
+		try {
+			connection.channel.configureBlocking(true);
+			connection.bufferConsumed = 0;
+			httpd.getAsyncRunner().exec(httpd.new ClientHandler(connection.getInputStream(), connection.channel.socket(), connection));
+		} catch (IOException e) {
+			log(DEBUG, "Communication with the client broken", e);
+			connection.close();
+		}
+	}
+
+	private void closeIdleConnections() {
+		long deadline = System.currentTimeMillis() - IDLE_TIMEOUT;
+		for (SelectionKey key : selector.keys()) {
+			Object attachment = key.attachment();
+			if (key.isValid() && attachment instanceof Connection && ((Connection) attachment).lastActivity < deadline) {
+				key.cancel();
+				parkedConnections.decrementAndGet();
+				((Connection) attachment).close();
+			}
+		}
+	}
+
+	private void closeAll() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// already closed
+		}
+		Connection connection;
+		while ((connection = pending.poll()) != null) {
+			connection.close();
+		}
+		parkedConnections.set(0);
+		NanoHTTPD.safeClose(selector);
+	}
+}
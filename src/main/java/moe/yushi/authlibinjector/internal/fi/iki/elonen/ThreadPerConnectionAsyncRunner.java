@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves each connection on a new thread from the given factory.
+ * <p>
+ * This is meant for virtual threads, which are cheap to create and don't need pooling.
+ */
+public class ThreadPerConnectionAsyncRunner implements IAsyncRunner {
+
+	private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+	private final ThreadFactory threadFactory;
+
+	public ThreadPerConnectionAsyncRunner(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public void closeAll() {
+		for (NanoHTTPD.ClientHandler clientHandler : this.running) {
+			clientHandler.close();
+		}
+	}
+
+	@Override
+	public void closed(NanoHTTPD.ClientHandler clientHandler) {
+		this.running.remove(clientHandler);
+	}
+
+	@Override
+	public void exec(NanoHTTPD.ClientHandler clientHandler) {
+		this.running.add(clientHandler);
+		this.threadFactory.newThread(clientHandler).start();
+	}
+
+	@Override
+	public int getOpenConnections() {
+		return this.running.size();
+	}
+}
@@ -41,6 +41,8 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import moe.yushi.authlibinjector.Config;
+import moe.yushi.authlibinjector.transform.PerformanceMetrics.Phase;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
 
 public class ClassTransformer implements ClassFileTransformer {
 
@@ -48,13 +50,15 @@ public class ClassTransformer implements ClassFileTransformer {
 	public final List<ClassLoadingListener> listeners = new CopyOnWriteArrayList<>();
 	public final PerformanceMetrics performanceMetrics = new PerformanceMetrics();
 	private String[] ignores = new String[0];
+	private volatile TransformCache cache;
+	private volatile TransformUnitIndex unitIndex = new TransformUnitIndex(TransformUnitIndex.NO_UNITS);
 
 	private class TransformHandle {
 
 		private class TransformContextImpl implements TransformContext {
 
 			public boolean modifiedMark;
-			public boolean callbackMetafactoryRequested = false;
+			public boolean callbackMetafactoryRequested;
 
 			@Override
 			public void markModified() {
@@ -66,6 +70,11 @@ public class ClassTransformer implements ClassFileTransformer {
 				return TransformHandle.this.getStringConstants();
 			}
 
+			@Override
+			public boolean constantPoolContains(MultiPatternMatcher matcher) {
+				return ConstantPoolScanner.containsMatch(classBuffer, matcher);
+			}
+
 			@Override
 			public String getClassName() {
 				return className;
@@ -81,7 +90,7 @@ public class ClassTransformer implements ClassFileTransformer {
 				boolean useInvokeDynamic = (getClassVersion() & 0xffff) >= 50;
 
 				if (useInvokeDynamic) {
-					addCallbackMetafactory = true;
+					callbackMetafactoryRequested = true;
 					CallbackSupport.callWithInvokeDynamic(mv, owner, methodName, this);
 				} else {
 					CallbackSupport.callWithIntermediateMethod(mv, owner, methodName, this);
@@ -106,6 +115,7 @@ public class ClassTransformer implements ClassFileTransformer {
 		private List<TransformUnit> appliedTransformers;
 		private boolean addCallbackMetafactory = false;
 		private Map<String, Consumer<ClassVisitor>> generatedMethods;
+		private long postProcessingTime;
 
 		public TransformHandle(ClassLoader classLoader, String className, byte[] classBuffer) {
 			this.className = className;
@@ -137,13 +147,36 @@ public class ClassTransformer implements ClassFileTransformer {
 		public void accept(TransformUnit... units) {
 			long t0 = System.nanoTime();
 
-			ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			// Backing the writer with the reader keeps the constant pool, and allows ASM to copy
+			// methods that no unit visits (i.e. visitMethod() returns the writer's own visitor) as-is,
+			// without decoding them, re-encoding them, or computing their maxs.
+			ClassWriter writer = new ClassWriter(getClassReader(), ClassWriter.COMPUTE_MAXS);
 
 			TransformContextImpl[] ctxs = new TransformContextImpl[units.length];
-			ClassVisitor chain = writer;
+
+			// the members requested by the units are generated in the same pass, after everything else is visited
+			ClassVisitor generator = new ClassVisitor(ASM9, writer) {
+				@Override
+				public void visitEnd() {
+					// the metafactory is only added on behalf of the units that have marked the class as modified
+					for (TransformContextImpl ctx : ctxs) {
+						if (ctx != null && ctx.modifiedMark && ctx.callbackMetafactoryRequested) {
+							addCallbackMetafactory = true;
+						}
+					}
+					injectGeneratedMembers(this);
+					super.visitEnd();
+				}
+			};
+
+			long[] unitScanTimes = new long[units.length];
+			ClassVisitor chain = generator;
 			for (int i = units.length - 1; i >= 0; i--) {
 				TransformContextImpl ctx = new TransformContextImpl();
+				long unitT0 = System.nanoTime();
 				Optional<ClassVisitor> visitor = units[i].transform(classLoader, className, chain, ctx);
+				unitScanTimes[i] = System.nanoTime() - unitT0;
+				performanceMetrics.getUnitMetrics(units[i]).scanTime.add(unitScanTimes[i]);
 				if (!visitor.isPresent())
 					continue;
 				ctxs[i] = ctx;
@@ -151,27 +184,39 @@ public class ClassTransformer implements ClassFileTransformer {
 			}
 
 			long t1 = System.nanoTime();
-			synchronized (performanceMetrics) {
-				performanceMetrics.scanTime += t1 - t0;
-			}
+			performanceMetrics.scanTime.add(t1 - t0);
+			performanceMetrics.recordPhase(Phase.SCAN, t1 - t0);
 
-			if (chain == writer)
+			if (chain == generator) {
+				for (int i = 0; i < units.length; i++) {
+					performanceMetrics.getUnitMetrics(units[i]).latency.record(unitScanTimes[i]);
+				}
 				return;
+			}
 
 			t0 = System.nanoTime();
 
 			getClassReader().accept(chain, 0);
 
 			t1 = System.nanoTime();
-			synchronized (performanceMetrics) {
-				performanceMetrics.analysisTime += t1 - t0;
-			}
+			performanceMetrics.analysisTime.add(t1 - t0);
+			performanceMetrics.recordPhase(Phase.ANALYSIS, t1 - t0);
 
 			boolean modified = false;
 			for (int i = 0; i < units.length; i++) {
 				TransformContextImpl ctx = ctxs[i];
-				if (ctx == null || !ctx.modifiedMark)
+				PerformanceMetrics.UnitMetrics unitMetrics = performanceMetrics.getUnitMetrics(units[i]);
+				if (ctx == null) {
+					unitMetrics.latency.record(unitScanTimes[i]);
+					continue;
+				}
+
+				unitMetrics.latency.record(unitScanTimes[i] + t1 - t0);
+				unitMetrics.analysisTime.add(t1 - t0);
+				unitMetrics.classesAnalyzed.increment();
+				if (!ctx.modifiedMark)
 					continue;
+				unitMetrics.classesTransformed.increment();
 
 				log(INFO, "Transformed [" + className + "] with [" + units[i] + "]");
 
@@ -179,58 +224,50 @@ public class ClassTransformer implements ClassFileTransformer {
 					appliedTransformers = new ArrayList<>();
 				appliedTransformers.add(units[i]);
 
-				this.addCallbackMetafactory |= ctx.callbackMetafactoryRequested;
-
 				modified = true;
 			}
 
 			if (modified) {
-				updateClassBuffer(writer.toByteArray());
+				t0 = System.nanoTime();
+				byte[] result = writer.toByteArray();
+				if (addCallbackMetafactory) {
+					upgradeClassVersion(result);
+				}
+				updateClassBuffer(result);
+				postProcessingTime += System.nanoTime() - t0;
 			}
 		}
 
-		private void injectCallbackMetafactory() {
-			log(DEBUG, "Adding callback metafactory");
+		private void injectGeneratedMembers(ClassVisitor visitor) {
+			if (addCallbackMetafactory) {
+				log(DEBUG, "Adding callback metafactory");
+				CallbackSupport.insertMetafactory(visitor);
+			}
+			if (generatedMethods != null) {
+				for (Entry<String, Consumer<ClassVisitor>> el : generatedMethods.entrySet()) {
+					log(DEBUG, "Adding generated method [" + el.getKey() + "]");
+					el.getValue().accept(visitor);
+				}
+			}
+		}
 
+		/**
+		 * Upgrades the class file to Java 7 (if it's older), which is required by invokedynamic.
+		 * This is done by patching the version field in place, since whether an upgrade is needed
+		 * is only known after the class has been visited.
+		 */
+		private void upgradeClassVersion(byte[] classfile) {
 			int classVersion = getClassVersion();
 			int majorVersion = classVersion & 0xffff;
-
-			int newVersion;
 			if (majorVersion < 51) {
-				newVersion = 51;
+				int newVersion = 51;
 				log(DEBUG, "Upgrading class version from " + classVersion + " to " + newVersion);
-			} else {
-				newVersion = classVersion;
+				// u2 minor_version, u2 major_version
+				classfile[4] = 0;
+				classfile[5] = 0;
+				classfile[6] = (byte) (newVersion >>> 8);
+				classfile[7] = (byte) newVersion;
 			}
-
-			ClassReader reader = getClassReader();
-			ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
-			ClassVisitor visitor = new ClassVisitor(ASM9, writer) {
-				@Override
-				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-					super.visit(newVersion, access, name, signature, superName, interfaces);
-					CallbackSupport.insertMetafactory(this);
-				}
-			};
-			reader.accept(visitor, 0);
-			updateClassBuffer(writer.toByteArray());
-		}
-
-		private void injectGeneratedMethods() {
-			ClassReader reader = getClassReader();
-			ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
-			ClassVisitor visitor = new ClassVisitor(ASM9, writer) {
-				@Override
-				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-					super.visit(version, access, name, signature, superName, interfaces);
-					for (Entry<String, Consumer<ClassVisitor>> el : generatedMethods.entrySet()) {
-						log(DEBUG, "Adding generated method [" + el.getKey() + "]");
-						el.getValue().accept(this);
-					}
-				}
-			};
-			reader.accept(visitor, 0);
-			updateClassBuffer(writer.toByteArray());
 		}
 
 		private void updateClassBuffer(byte[] buf) {
@@ -243,12 +280,6 @@ public class ClassTransformer implements ClassFileTransformer {
 			if (appliedTransformers == null || appliedTransformers.isEmpty()) {
 				return Optional.empty();
 			}
-			if (addCallbackMetafactory) {
-				injectCallbackMetafactory();
-			}
-			if (generatedMethods != null) {
-				injectGeneratedMethods();
-			}
 			return Optional.of(classBuffer);
 		}
 
@@ -273,34 +304,48 @@ public class ClassTransformer implements ClassFileTransformer {
 						listeners.forEach(it -> it.onClassLoading(loader, className, classfileBuffer, Collections.emptyList()));
 
 						long t1 = System.nanoTime();
-						synchronized (performanceMetrics) {
-							performanceMetrics.classesSkipped++;
-							performanceMetrics.totalTime += t1 - t0;
-							performanceMetrics.matchTime += t1 - t0;
-						}
+						performanceMetrics.classesSkipped.increment();
+						performanceMetrics.totalTime.add(t1 - t0);
+						performanceMetrics.matchTime.add(t1 - t0);
+						performanceMetrics.recordPhase(Phase.MATCH, t1 - t0);
+						performanceMetrics.recordClass(loader, className, t1 - t0);
 						return null;
 					}
 				}
+				TransformUnitIndex index = getUnitIndex();
+				TransformUnit[] unitsArray = index.lookup(className);
+				boolean indexHit = index.isHit(unitsArray);
+				unitsArray = index.filterByConstants(unitsArray, classfileBuffer);
 				long t1 = System.nanoTime();
 
-				TransformHandle handle = new TransformHandle(loader, className, classfileBuffer);
-				TransformUnit[] unitsArray = units.toArray(new TransformUnit[0]);
-				handle.accept(unitsArray);
+				Optional<byte[]> transformResult;
+				if (unitsArray.length == 0) {
+					// no unit is interested in this class, so we don't need to parse it
+					transformResult = Optional.empty();
+					listeners.forEach(it -> it.onClassLoading(loader, className, classfileBuffer, Collections.emptyList()));
+				} else {
+					TransformCache cache = this.cache;
+					if (cache != null && isCacheable(unitsArray)) {
+						transformResult = transformWithCache(cache, index.getUnits(), loader, className, classfileBuffer, unitsArray);
+					} else {
+						transformResult = transform(loader, className, classfileBuffer, unitsArray, null);
+					}
+				}
 
-				Optional<byte[]> transformResult = handle.finish();
 				if (Config.printUntransformedClass && !transformResult.isPresent()) {
 					log(DEBUG, "No transformation is applied to [" + className + "]");
 				}
 
-				listeners.forEach(it -> it.onClassLoading(loader, className, handle.getFinalResult(), handle.getAppliedTransformers()));
-
 				long t2 = System.nanoTime();
 
-				synchronized (performanceMetrics) {
-					performanceMetrics.classesScanned++;
-					performanceMetrics.totalTime += t2 - t0;
-					performanceMetrics.matchTime += t1 - t0;
-				}
+				// indexHits is incremented before classesScanned, see PerformanceMetrics.snapshot()
+				if (indexHit)
+					performanceMetrics.indexHits.increment();
+				performanceMetrics.classesScanned.increment();
+				performanceMetrics.totalTime.add(t2 - t0);
+				performanceMetrics.matchTime.add(t1 - t0);
+				performanceMetrics.recordPhase(Phase.MATCH, t1 - t0);
+				performanceMetrics.recordClass(loader, className, t2 - t0);
 
 				return transformResult.orElse(null);
 			} catch (Throwable e) {
@@ -310,6 +355,101 @@ public class ClassTransformer implements ClassFileTransformer {
 		return null;
 	}
 
+	private Optional<byte[]> transform(ClassLoader loader, String className, byte[] classfileBuffer, TransformUnit[] units, /* nullable */ List<TransformUnit> appliedTransformersOut) {
+		TransformHandle handle = new TransformHandle(loader, className, classfileBuffer);
+		handle.accept(units);
+		Optional<byte[]> result = handle.finish();
+		long t0 = System.nanoTime();
+		listeners.forEach(it -> it.onClassLoading(loader, className, handle.getFinalResult(), handle.getAppliedTransformers()));
+		performanceMetrics.recordPhase(Phase.POST_PROCESSING, handle.postProcessingTime + System.nanoTime() - t0);
+		if (appliedTransformersOut != null) {
+			appliedTransformersOut.addAll(handle.getAppliedTransformers());
+		}
+		return result;
+	}
+
+	private Optional<byte[]> transformWithCache(TransformCache cache, TransformUnit[] allUnits, ClassLoader loader, String className, byte[] classfileBuffer, TransformUnit[] units) {
+		byte[] key = cache.computeKey(allUnits, classfileBuffer);
+		Optional<TransformCache.Entry> cached = cache.get(key);
+		if (cached.isPresent()) {
+			List<TransformUnit> appliedTransformers = new ArrayList<>();
+			for (int idx : cached.get().getAppliedUnits()) {
+				if (idx >= allUnits.length) {
+					cached = Optional.empty();
+					break;
+				}
+				appliedTransformers.add(allUnits[idx]);
+			}
+			if (cached.isPresent()) {
+				performanceMetrics.cacheHits.increment();
+				for (TransformUnit unit : appliedTransformers) {
+					log(INFO, "Transformed [" + className + "] with [" + unit + "] (cached)");
+				}
+				Optional<byte[]> result = cached.get().getResult();
+				byte[] finalResult = result.orElse(classfileBuffer);
+				listeners.forEach(it -> it.onClassLoading(loader, className, finalResult, appliedTransformers));
+				return result;
+			}
+		}
+
+		performanceMetrics.cacheMisses.increment();
+		List<TransformUnit> appliedTransformers = new ArrayList<>();
+		Optional<byte[]> result = transform(loader, className, classfileBuffer, units, appliedTransformers);
+		int[] appliedUnits = new int[appliedTransformers.size()];
+		for (int i = 0; i < appliedUnits.length; i++) {
+			appliedUnits[i] = indexOf(allUnits, appliedTransformers.get(i));
+		}
+		cache.put(key, new TransformCache.Entry(appliedUnits, result.orElse(null)));
+		return result;
+	}
+
+	private static boolean isCacheable(TransformUnit[] units) {
+		for (TransformUnit unit : units) {
+			if (!unit.isCacheable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(TransformUnit[] units, TransformUnit unit) {
+		for (int i = 0; i < units.length; i++) {
+			if (units[i] == unit) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException(unit + " is not registered");
+	}
+
+	/**
+	 * Checks whether any unit may be interested in the given class, without analyzing it.
+	 *
+	 * This only consults the class name and the constant pool, like the first step of {@link #transform}.
+	 * If the class file is not available, the decision is based on the class name only.
+	 */
+	public boolean mayTransform(String className, /* nullable */ byte[] classfileBuffer) {
+		for (String ignore : ignores) {
+			if (className.startsWith(ignore)) {
+				return false;
+			}
+		}
+		TransformUnitIndex index = getUnitIndex();
+		TransformUnit[] unitsArray = index.lookup(className);
+		if (unitsArray.length == 0) {
+			return false;
+		}
+		return classfileBuffer == null || index.filterByConstants(unitsArray, classfileBuffer).length > 0;
+	}
+
+	private TransformUnitIndex getUnitIndex() {
+		TransformUnitIndex index = unitIndex;
+		if (!index.isUpToDate(units)) {
+			index = new TransformUnitIndex(units.toArray(new TransformUnit[0]));
+			unitIndex = index;
+		}
+		return index;
+	}
+
 	private static List<String> extractStringConstants(ClassReader reader) {
 		List<String> constants = new ArrayList<>();
 		int constantPoolSize = reader.getItemCount();
@@ -330,4 +470,8 @@ public class ClassTransformer implements ClassFileTransformer {
 	public void setIgnores(Collection<String> newIgnores) {
 		ignores = newIgnores.toArray(ignores);
 	}
+
+	public void setCache(/* nullable */ TransformCache cache) {
+		this.cache = cache;
+	}
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import java.io.ByteArrayOutputStream;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
+
+/**
+ * Scans the constant pool of a class file without parsing it into objects.
+ *
+ * See JVMS 4.4 for the constant pool layout.
+ */
+public final class ConstantPoolScanner {
+	private ConstantPoolScanner() {
+	}
+
+	/**
+	 * The result when the class file cannot be understood by the scanner.
+	 * Every prefix is considered to be present, so that the caller falls back to the full analysis.
+	 */
+	public static final long ALL_MATCHED = -1L;
+
+	/**
+	 * Finds which of the given prefixes occur at the beginning of any CONSTANT_Utf8 entry.
+	 *
+	 * @param classfile the class file
+	 * @param prefixes at most 64 prefixes, in modified UTF-8 (see {@link #encode(String)})
+	 * @return a bitmask, where bit i is set if prefixes[i] is found
+	 */
+	public static long findPrefixes(byte[] classfile, byte[][] prefixes) {
+		if (prefixes.length == 0) {
+			return 0;
+		}
+		if (prefixes.length > 64 || classfile.length < 10) {
+			return ALL_MATCHED;
+		}
+
+		long found = 0;
+		long all = prefixes.length == 64 ? ALL_MATCHED : (1L << prefixes.length) - 1;
+
+		int count = readUnsignedShort(classfile, 8);
+		int offset = 10;
+		for (int idx = 1; idx < count; idx++) {
+			if (offset >= classfile.length) {
+				return ALL_MATCHED;
+			}
+			int tag = classfile[offset];
+			if (tag == 1) { // CONSTANT_Utf8
+				if (offset + 3 > classfile.length) {
+					return ALL_MATCHED;
+				}
+				int length = readUnsignedShort(classfile, offset + 1);
+				int start = offset + 3;
+				if (start + length > classfile.length) {
+					return ALL_MATCHED;
+				}
+				for (int i = 0; i < prefixes.length; i++) {
+					if ((found & (1L << i)) == 0 && startsWith(classfile, start, length, prefixes[i])) {
+						found |= 1L << i;
+					}
+				}
+				if (found == all) {
+					return found;
+				}
+				offset = start + length;
+			} else {
+				int size = nonUtf8EntrySize(tag);
+				if (size == -1) {
+					return ALL_MATCHED;
+				}
+				offset += size;
+				if (tag == 5 || tag == 6) {
+					idx++; // takes two entries
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks whether any CONSTANT_Utf8 entry contains a match of the given matcher.
+	 *
+	 * Each entry is scanned on its own, so a match never spans two entries.
+	 * If the class file cannot be understood, true is returned.
+	 */
+	public static boolean containsMatch(byte[] classfile, MultiPatternMatcher matcher) {
+		if (classfile.length < 10) {
+			return true;
+		}
+		int count = readUnsignedShort(classfile, 8);
+		int offset = 10;
+		for (int idx = 1; idx < count; idx++) {
+			if (offset >= classfile.length) {
+				return true;
+			}
+			int tag = classfile[offset];
+			if (tag == 1) { // CONSTANT_Utf8
+				if (offset + 3 > classfile.length) {
+					return true;
+				}
+				int length = readUnsignedShort(classfile, offset + 1);
+				int start = offset + 3;
+				if (start + length > classfile.length) {
+					return true;
+				}
+				if (matcher.matches(classfile, start, length)) {
+					return true;
+				}
+				offset = start + length;
+			} else {
+				int size = nonUtf8EntrySize(tag);
+				if (size == -1) {
+					return true;
+				}
+				offset += size;
+				if (tag == 5 || tag == 6) {
+					idx++; // takes two entries
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the size of a constant pool entry (including its tag) other than CONSTANT_Utf8,
+	 * or -1 if the tag is unknown.
+	 */
+	private static int nonUtf8EntrySize(int tag) {
+		switch (tag) {
+			case 7: // CONSTANT_Class
+			case 8: // CONSTANT_String
+			case 16: // CONSTANT_MethodType
+			case 19: // CONSTANT_Module
+			case 20: // CONSTANT_Package
+				return 3;
+
+			case 15: // CONSTANT_MethodHandle
+				return 4;
+
+			case 3: // CONSTANT_Integer
+			case 4: // CONSTANT_Float
+			case 9: // CONSTANT_Fieldref
+			case 10: // CONSTANT_Methodref
+			case 11: // CONSTANT_InterfaceMethodref
+			case 12: // CONSTANT_NameAndType
+			case 17: // CONSTANT_Dynamic
+			case 18: // CONSTANT_InvokeDynamic
+				return 5;
+
+			case 5: // CONSTANT_Long
+			case 6: // CONSTANT_Double
+				return 9;
+
+			default:
+				return -1;
+		}
+	}
+
+	private static boolean startsWith(byte[] buf, int start, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buf[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readUnsignedShort(byte[] buf, int offset) {
+		return ((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff);
+	}
+
+	/**
+	 * Encodes the given string in modified UTF-8, which is the encoding of CONSTANT_Utf8 entries.
+	 */
+	public static byte[] encode(String str) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c >= 0x01 && c <= 0x7f) {
+				out.write(c);
+			} else if (c <= 0x7ff) {
+				out.write(0xc0 | (c >> 6));
+				out.write(0x80 | (c & 0x3f));
+			} else {
+				out.write(0xe0 | (c >> 12));
+				out.write(0x80 | ((c >> 6) & 0x3f));
+				out.write(0x80 | (c & 0x3f));
+			}
+		}
+		return out.toByteArray();
+	}
+}
@@ -21,13 +21,22 @@ import java.util.Optional;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
 
 public abstract class LdcTransformUnit implements TransformUnit {
 
 	@Override
 	public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+		MultiPatternMatcher constantMatcher = getConstantMatcher().orElse(null);
+		if (constantMatcher != null && !ctx.constantPoolContains(constantMatcher)) {
+			return Optional.empty();
+		}
+
 		boolean matched = false;
 		for (String constant : ctx.getStringConstants()) {
+			if (constantMatcher != null && !constantMatcher.matches(constant)) {
+				continue;
+			}
 			Optional<String> transformed = transformLdc(constant);
 			if (transformed.isPresent() && !transformed.get().equals(constant)) {
 				matched = true;
@@ -78,4 +87,15 @@ public abstract class LdcTransformUnit implements TransformUnit {
 	}
 
 	protected abstract Optional<String> transformLdc(String input);
+
+	/**
+	 * Returns a matcher that matches every constant that transformLdc() may change,
+	 * or empty if such constants can't be described this way.
+	 *
+	 * If present, the class file is scanned with the matcher first,
+	 * and only the constants containing a match are passed to transformLdc() during the analysis.
+	 */
+	protected Optional<MultiPatternMatcher> getConstantMatcher() {
+		return Optional.empty();
+	}
 }
@@ -16,19 +16,306 @@
  */
 package moe.yushi.authlibinjector.transform;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import moe.yushi.authlibinjector.util.LatencyHistogram;
+
+/**
+ * Counters of the class transformer.
+ *
+ * Counters are striped (LongAdder), so that class loading threads don't contend with each other.
+ * Use {@link #snapshot()} to read all the counters at once.
+ *
+ * Besides the totals, the latency of each class is recorded in histograms,
+ * broken down by phase, by transform unit and by class loader,
+ * and the slowest classes are kept, so that a single slow class can be found.
+ */
 public class PerformanceMetrics {
 
-	volatile long totalTime;
-	volatile long matchTime;
-	volatile long scanTime;
-	volatile long analysisTime;
-	volatile long classesScanned;
-	volatile long classesSkipped;
-
-	public synchronized long getTotalTime() { return totalTime; }
-	public synchronized long getMatchTime() { return matchTime; }
-	public synchronized long getScanTime() { return scanTime; }
-	public synchronized long getAnalysisTime() { return analysisTime; }
-	public synchronized long getClassesScanned() { return classesScanned; }
-	public synchronized long getClassesSkipped() { return classesSkipped; }
+	final LongAdder totalTime = new LongAdder();
+	final LongAdder matchTime = new LongAdder();
+	final LongAdder scanTime = new LongAdder();
+	final LongAdder analysisTime = new LongAdder();
+	final LongAdder classesScanned = new LongAdder();
+	final LongAdder classesSkipped = new LongAdder();
+	final LongAdder indexHits = new LongAdder();
+	final LongAdder cacheHits = new LongAdder();
+	final LongAdder cacheMisses = new LongAdder();
+
+	/**
+	 * The phases of the transformation of a class.
+	 */
+	public enum Phase {
+		/** Looking up the units interested in the class. */
+		MATCH("match"),
+		/** Letting each unit decide whether to visit the class. */
+		SCAN("scan"),
+		/** Visiting the class. */
+		ANALYSIS("analysis"),
+		/** Writing the class, and notifying the listeners. */
+		POST_PROCESSING("postProcessing");
+
+		private final String name;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private static final int SLOWEST_CLASSES = 10;
+
+	private final LatencyHistogram totalLatency = new LatencyHistogram();
+	private final Map<Phase, LatencyHistogram> phaseLatencies = new EnumMap<>(Phase.class);
+	private final Map<TransformUnit, UnitMetrics> unitMetrics = new ConcurrentHashMap<>();
+	// class loader type -> latency; keyed by name so that class loaders are not retained
+	private final Map<String, LatencyHistogram> classLoaderLatencies = new ConcurrentHashMap<>();
+
+	// sorted by time, in descending order
+	private final List<SlowClass> slowestClasses = new ArrayList<>();
+	private volatile long slowestClassesThreshold;
+
+	{
+		for (Phase phase : Phase.values()) {
+			phaseLatencies.put(phase, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Counters of a single transform unit.
+	 *
+	 * All the units that take part in the analysis of a class share a single pass,
+	 * so the time of that pass is added to each of them.
+	 */
+	static class UnitMetrics {
+		final LongAdder scanTime = new LongAdder();
+		final LongAdder analysisTime = new LongAdder();
+		final LongAdder classesAnalyzed = new LongAdder();
+		final LongAdder classesTransformed = new LongAdder();
+		// the scan time and the analysis time of each class
+		final LatencyHistogram latency = new LatencyHistogram();
+	}
+
+	public static class SlowClass {
+
+		private final String className;
+		private final String classLoader;
+		private final long time;
+
+		private SlowClass(String className, String classLoader, long time) {
+			this.className = className;
+			this.classLoader = classLoader;
+			this.time = time;
+		}
+
+		public String getClassName() { return className; }
+		public String getClassLoader() { return classLoader; }
+		/** Total time, in nanoseconds. */
+		public long getTime() { return time; }
+	}
+
+	void recordPhase(Phase phase, long nanos) {
+		phaseLatencies.get(phase).record(nanos);
+	}
+
+	/**
+	 * Records the total time spent on a class.
+	 */
+	void recordClass(/* nullable */ ClassLoader loader, String className, long nanos) {
+		totalLatency.record(nanos);
+
+		String loaderName = getClassLoaderName(loader);
+		LatencyHistogram loaderLatency = classLoaderLatencies.get(loaderName);
+		if (loaderLatency == null) {
+			LatencyHistogram newLatency = new LatencyHistogram();
+			loaderLatency = classLoaderLatencies.putIfAbsent(loaderName, newLatency);
+			if (loaderLatency == null) {
+				loaderLatency = newLatency;
+			}
+		}
+		loaderLatency.record(nanos);
+
+		if (nanos > slowestClassesThreshold) {
+			synchronized (slowestClasses) {
+				int idx = 0;
+				while (idx < slowestClasses.size() && slowestClasses.get(idx).time >= nanos) {
+					idx++;
+				}
+				if (idx < SLOWEST_CLASSES) {
+					slowestClasses.add(idx, new SlowClass(className, loaderName, nanos));
+					if (slowestClasses.size() > SLOWEST_CLASSES) {
+						slowestClasses.remove(SLOWEST_CLASSES);
+					}
+					if (slowestClasses.size() == SLOWEST_CLASSES) {
+						slowestClassesThreshold = slowestClasses.get(SLOWEST_CLASSES - 1).time;
+					}
+				}
+			}
+		}
+	}
+
+	private static String getClassLoaderName(/* nullable */ ClassLoader loader) {
+		return loader == null ? "bootstrap" : loader.getClass().getName();
+	}
+
+	UnitMetrics getUnitMetrics(TransformUnit unit) {
+		UnitMetrics metrics = unitMetrics.get(unit);
+		if (metrics == null) {
+			UnitMetrics newMetrics = new UnitMetrics();
+			metrics = unitMetrics.putIfAbsent(unit, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	public long getTotalTime() { return totalTime.sum(); }
+	public long getMatchTime() { return matchTime.sum(); }
+	public long getScanTime() { return scanTime.sum(); }
+	public long getAnalysisTime() { return analysisTime.sum(); }
+	public long getClassesScanned() { return classesScanned.sum(); }
+	public long getClassesSkipped() { return classesSkipped.sum(); }
+	public long getIndexHits() { return indexHits.sum(); }
+	public long getCacheHits() { return cacheHits.sum(); }
+	public long getCacheMisses() { return cacheMisses.sum(); }
+
+	/**
+	 * Returns the fraction of scanned classes that matched a target declared by a transform unit.
+	 */
+	public double getIndexHitRate() {
+		long indexHits = this.indexHits.sum();
+		long classesScanned = this.classesScanned.sum();
+		return classesScanned == 0 ? 0 : (double) indexHits / classesScanned;
+	}
+
+	/**
+	 * Clears all the counters and histograms.
+	 *
+	 * Classes that are being transformed concurrently may be partially counted.
+	 */
+	public void reset() {
+		for (LongAdder counter : new LongAdder[] { totalTime, matchTime, scanTime, analysisTime, classesScanned, classesSkipped, indexHits, cacheHits, cacheMisses }) {
+			counter.reset();
+		}
+		totalLatency.reset();
+		phaseLatencies.values().forEach(LatencyHistogram::reset);
+		unitMetrics.clear();
+		classLoaderLatencies.clear();
+		synchronized (slowestClasses) {
+			slowestClasses.clear();
+			slowestClassesThreshold = 0;
+		}
+	}
+
+	/**
+	 * Reads all the counters.
+	 *
+	 * Each counter is read exactly once, and derived values are computed from the snapshot,
+	 * so they are consistent with each other. Apart from {@link #reset()}, counters are only incremented,
+	 * so a counter is always read after the counters that are incremented after it
+	 * (e.g. indexHits before classesScanned).
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	public static class Snapshot {
+
+		private final long indexHits;
+		private final long totalTime;
+		private final long matchTime;
+		private final long scanTime;
+		private final long analysisTime;
+		private final long classesScanned;
+		private final long classesSkipped;
+		private final long cacheHits;
+		private final long cacheMisses;
+		private final Map<TransformUnit, UnitSnapshot> units;
+		private final LatencyHistogram.Snapshot totalLatency;
+		private final Map<Phase, LatencyHistogram.Snapshot> phaseLatencies;
+		private final Map<String, LatencyHistogram.Snapshot> classLoaderLatencies;
+		private final List<SlowClass> slowestClasses;
+
+		private Snapshot(PerformanceMetrics metrics) {
+			indexHits = metrics.indexHits.sum();
+			cacheHits = metrics.cacheHits.sum();
+			cacheMisses = metrics.cacheMisses.sum();
+			scanTime = metrics.scanTime.sum();
+			analysisTime = metrics.analysisTime.sum();
+			classesScanned = metrics.classesScanned.sum();
+			classesSkipped = metrics.classesSkipped.sum();
+			matchTime = metrics.matchTime.sum();
+			totalTime = metrics.totalTime.sum();
+
+			Map<TransformUnit, UnitSnapshot> units = new LinkedHashMap<>();
+			metrics.unitMetrics.forEach((unit, unitMetrics) -> units.put(unit, new UnitSnapshot(unitMetrics)));
+			this.units = Collections.unmodifiableMap(units);
+
+			totalLatency = metrics.totalLatency.snapshot();
+			Map<Phase, LatencyHistogram.Snapshot> phaseLatencies = new EnumMap<>(Phase.class);
+			metrics.phaseLatencies.forEach((phase, histogram) -> phaseLatencies.put(phase, histogram.snapshot()));
+			this.phaseLatencies = Collections.unmodifiableMap(phaseLatencies);
+			Map<String, LatencyHistogram.Snapshot> classLoaderLatencies = new LinkedHashMap<>();
+			metrics.classLoaderLatencies.forEach((loader, histogram) -> classLoaderLatencies.put(loader, histogram.snapshot()));
+			this.classLoaderLatencies = Collections.unmodifiableMap(classLoaderLatencies);
+			synchronized (metrics.slowestClasses) {
+				slowestClasses = Collections.unmodifiableList(new ArrayList<>(metrics.slowestClasses));
+			}
+		}
+
+		public long getTotalTime() { return totalTime; }
+		public long getMatchTime() { return matchTime; }
+		public long getScanTime() { return scanTime; }
+		public long getAnalysisTime() { return analysisTime; }
+		public long getClassesScanned() { return classesScanned; }
+		public long getClassesSkipped() { return classesSkipped; }
+		public long getIndexHits() { return indexHits; }
+		public long getCacheHits() { return cacheHits; }
+		public long getCacheMisses() { return cacheMisses; }
+		public Map<TransformUnit, UnitSnapshot> getUnits() { return units; }
+		public LatencyHistogram.Snapshot getTotalLatency() { return totalLatency; }
+		public Map<Phase, LatencyHistogram.Snapshot> getPhaseLatencies() { return phaseLatencies; }
+		public Map<String, LatencyHistogram.Snapshot> getClassLoaderLatencies() { return classLoaderLatencies; }
+		public List<SlowClass> getSlowestClasses() { return slowestClasses; }
+
+		public double getIndexHitRate() {
+			return classesScanned == 0 ? 0 : (double) indexHits / classesScanned;
+		}
+	}
+
+	public static class UnitSnapshot {
+
+		private final long classesTransformed;
+		private final long analysisTime;
+		private final long classesAnalyzed;
+		private final long scanTime;
+		private final LatencyHistogram.Snapshot latency;
+
+		private UnitSnapshot(UnitMetrics metrics) {
+			latency = metrics.latency.snapshot();
+			classesTransformed = metrics.classesTransformed.sum();
+			analysisTime = metrics.analysisTime.sum();
+			classesAnalyzed = metrics.classesAnalyzed.sum();
+			scanTime = metrics.scanTime.sum();
+		}
+
+		/** Time spent in {@link TransformUnit#transform}, in nanoseconds. */
+		public long getScanTime() { return scanTime; }
+		/** Time of the analysis passes that this unit took part in, in nanoseconds. */
+		public long getAnalysisTime() { return analysisTime; }
+		public long getClassesAnalyzed() { return classesAnalyzed; }
+		public long getClassesTransformed() { return classesTransformed; }
+		/** The scan time and the analysis time of each class. */
+		public LatencyHistogram.Snapshot getLatency() { return latency; }
+	}
 }
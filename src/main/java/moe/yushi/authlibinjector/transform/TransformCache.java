@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+
+/**
+ * Persists the results of the transformation across restarts.
+ *
+ * An entry is keyed by the SHA-256 of the input class file, the classes of the active transform units,
+ * and a seed that describes everything else the units depend on (e.g. the API metadata).
+ * Entries are stored one per file, and are never modified once written.
+ */
+public class TransformCache {
+
+	private static final int MAGIC = 0x41494301;
+	private static final byte TYPE_UNCHANGED = 0;
+	private static final byte TYPE_TRANSFORMED = 1;
+
+	public static class Entry {
+
+		private final int[] appliedUnits;
+		private final /* nullable */ byte[] result;
+
+		/**
+		 * @param appliedUnits the indexes of the applied units in the unit list
+		 * @param result the transformed class file, or null if the class is unchanged
+		 */
+		public Entry(int[] appliedUnits, byte[] result) {
+			this.appliedUnits = appliedUnits;
+			this.result = result;
+		}
+
+		public int[] getAppliedUnits() {
+			return appliedUnits;
+		}
+
+		public Optional<byte[]> getResult() {
+			return Optional.ofNullable(result);
+		}
+	}
+
+	private static class UnitSet {
+		final TransformUnit[] units;
+		final byte[] digest;
+
+		UnitSet(TransformUnit[] units, byte[] digest) {
+			this.units = units;
+			this.digest = digest;
+		}
+	}
+
+	private final Path directory;
+	private final byte[] seed;
+	private volatile UnitSet lastUnitSet;
+	private volatile boolean writeFailureReported;
+
+	public TransformCache(Path directory, String seed) throws IOException {
+		this.directory = directory;
+		this.seed = seed.getBytes(UTF_8);
+		Files.createDirectories(directory);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private byte[] getUnitSetDigest(TransformUnit[] units) {
+		UnitSet unitSet = lastUnitSet;
+		if (unitSet == null || unitSet.units != units) {
+			MessageDigest digest = newDigest();
+			digest.update(seed);
+			for (TransformUnit unit : units) {
+				digest.update((unit.getClass().getName() + "\n").getBytes(UTF_8));
+			}
+			unitSet = new UnitSet(units, digest.digest());
+			lastUnitSet = unitSet;
+		}
+		return unitSet.digest;
+	}
+
+	/**
+	 * Computes the key of the given class file.
+	 *
+	 * @param units all the transform units, in registration order; indexes in {@link Entry} refer to this array
+	 */
+	public byte[] computeKey(TransformUnit[] units, byte[] classfile) {
+		MessageDigest digest = newDigest();
+		digest.update(getUnitSetDigest(units));
+		digest.update(classfile);
+		return digest.digest();
+	}
+
+	private Path getEntryPath(byte[] key) {
+		StringBuilder sb = new StringBuilder(key.length * 2);
+		for (byte b : key) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		String name = sb.toString();
+		return directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+	}
+
+	public Optional<Entry> get(byte[] key) {
+		Path path = getEntryPath(key);
+		try {
+			// entries are a few KiB, mapping them would cost a page and a mapping slot each until GC
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+			if (buf.getInt() != MAGIC) {
+				log(DEBUG, "Ignoring malformed cache entry " + path);
+				return Optional.empty();
+			}
+			byte type = buf.get();
+			int[] appliedUnits = new int[buf.getShort() & 0xffff];
+			for (int i = 0; i < appliedUnits.length; i++) {
+				appliedUnits[i] = buf.getShort() & 0xffff;
+			}
+			byte[] result = null;
+			if (type == TYPE_TRANSFORMED) {
+				result = new byte[buf.getInt()];
+				buf.get(result);
+			} else if (type != TYPE_UNCHANGED) {
+				log(DEBUG, "Ignoring malformed cache entry " + path);
+				return Optional.empty();
+			}
+			if (buf.hasRemaining()) {
+				log(DEBUG, "Ignoring malformed cache entry " + path);
+				return Optional.empty();
+			}
+			return Optional.of(new Entry(appliedUnits, result));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		} catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+			log(DEBUG, "Failed to read cache entry " + path, e);
+			return Optional.empty();
+		}
+	}
+
+	public void put(byte[] key, Entry entry) {
+		Path path = getEntryPath(key);
+		Path tmp = null;
+		try {
+			Files.createDirectories(path.getParent());
+			tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+			try (OutputStream fileOut = Files.newOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(fileOut)) {
+				out.writeInt(MAGIC);
+				out.writeByte(entry.result == null ? TYPE_UNCHANGED : TYPE_TRANSFORMED);
+				out.writeShort(entry.appliedUnits.length);
+				for (int idx : entry.appliedUnits) {
+					out.writeShort(idx);
+				}
+				if (entry.result != null) {
+					out.writeInt(entry.result.length);
+					out.write(entry.result);
+				}
+			}
+			try {
+				Files.move(tmp, path, ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, path, REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (IOException e) {
+			if (!writeFailureReported) {
+				writeFailureReported = true;
+				log(WARNING, "Failed to write transform cache entry " + path, e);
+			}
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.function.Consumer;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
 
 public interface TransformContext {
 
@@ -31,6 +32,12 @@ public interface TransformContext {
 
 	List<String> getStringConstants();
 
+	/**
+	 * Checks whether any string in the constant pool may contain a match of the given matcher.
+	 * This works on the raw class file, and is cheaper than {@link #getStringConstants()}.
+	 */
+	boolean constantPoolContains(MultiPatternMatcher matcher);
+
 	void invokeCallback(MethodVisitor mv, Class<?> owner, String methodName);
 
 	void addGeneratedMethod(String name, Consumer<ClassVisitor> generator);
@@ -17,10 +17,43 @@
 package moe.yushi.authlibinjector.transform;
 
 import java.util.Optional;
+import java.util.Set;
 import org.objectweb.asm.ClassVisitor;
 
 public interface TransformUnit {
 
 	Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext context);
 
+	/**
+	 * Returns the names of the classes that this unit may transform.
+	 *
+	 * A name ending with '.' is treated as a package prefix, like the ones in -Dauthlibinjector.ignoredPackages.
+	 * The class transformer only consults this unit for classes matching one of the returned names.
+	 * If empty is returned (the default), this unit will be consulted for every class.
+	 */
+	default Optional<Set<String>> getTargetClasses() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Returns the prefixes of the constants that this unit is looking for.
+	 *
+	 * If present, this unit will only be consulted for classes whose constant pool
+	 * contains a CONSTANT_Utf8 entry starting with one of the returned prefixes.
+	 * The constant pool is scanned without being parsed, so a class that no unit is
+	 * interested in doesn't need to be analyzed at all.
+	 */
+	default Optional<Set<String>> getTargetConstants() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Returns whether the result of transform() only depends on the class file and the unit's own configuration.
+	 *
+	 * Classes that a non-cacheable unit may be interested in bypass the transform cache
+	 * (-Dauthlibinjector.transformCache).
+	 */
+	default boolean isCacheable() {
+		return true;
+	}
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Maps class names to the transform units that may be interested in them.
+ *
+ * The index is immutable, and is built from a snapshot of the unit list.
+ * Units in every returned array keep their registration order.
+ */
+final class TransformUnitIndex {
+
+	static final TransformUnit[] NO_UNITS = new TransformUnit[0];
+
+	private final TransformUnit[] snapshot;
+
+	// units that didn't declare their targets
+	private final TransformUnit[] wildcardUnits;
+
+	// exact class name -> all units (including wildcard units) to consult
+	private final Map<String, TransformUnit[]> exactMatches = new HashMap<>();
+
+	private final String[] prefixes;
+
+	// for each unit, the prefixes it targets; null if it's a wildcard unit
+	private final List<Set<String>> unitPrefixes;
+
+	// prefixes of the constants that units are looking for, see ConstantPoolScanner
+	private final byte[][] constantPrefixes;
+
+	// unit -> bitmask of the constant prefixes it needs; absent if the unit doesn't declare them
+	private final Map<TransformUnit, Long> constantMasks = new IdentityHashMap<>();
+
+	TransformUnitIndex(TransformUnit[] snapshot) {
+		this.snapshot = snapshot;
+
+		List<Set<String>> unitTargets = new ArrayList<>(Collections.nCopies(snapshot.length, null));
+		unitPrefixes = new ArrayList<>(Collections.nCopies(snapshot.length, null));
+		Set<String> allExactNames = new LinkedHashSet<>();
+		Set<String> allPrefixes = new LinkedHashSet<>();
+		List<TransformUnit> wildcards = new ArrayList<>();
+
+		for (int i = 0; i < snapshot.length; i++) {
+			Optional<Set<String>> targets = snapshot[i].getTargetClasses();
+			if (!targets.isPresent()) {
+				wildcards.add(snapshot[i]);
+				continue;
+			}
+			Set<String> prefixesOfUnit = new LinkedHashSet<>();
+			unitTargets.set(i, targets.get());
+			unitPrefixes.set(i, prefixesOfUnit);
+			for (String target : targets.get()) {
+				if (target.endsWith(".")) {
+					prefixesOfUnit.add(target);
+					allPrefixes.add(target);
+				} else {
+					allExactNames.add(target);
+				}
+			}
+		}
+
+		wildcardUnits = wildcards.toArray(new TransformUnit[0]);
+		prefixes = allPrefixes.toArray(new String[0]);
+
+		List<String> allConstants = new ArrayList<>();
+		for (TransformUnit unit : snapshot) {
+			Optional<Set<String>> constants = unit.getTargetConstants();
+			if (!constants.isPresent()) {
+				continue;
+			}
+			long mask = 0;
+			for (String constant : constants.get()) {
+				int idx = allConstants.indexOf(constant);
+				if (idx == -1) {
+					idx = allConstants.size();
+					allConstants.add(constant);
+				}
+				if (idx >= 64) {
+					// too many prefixes for the scanner, always consult this unit
+					mask = ConstantPoolScanner.ALL_MATCHED;
+					break;
+				}
+				mask |= 1L << idx;
+			}
+			if (mask != ConstantPoolScanner.ALL_MATCHED) {
+				constantMasks.put(unit, mask);
+			}
+		}
+		constantPrefixes = new byte[Math.min(allConstants.size(), 64)][];
+		for (int i = 0; i < constantPrefixes.length; i++) {
+			constantPrefixes[i] = ConstantPoolScanner.encode(allConstants.get(i));
+		}
+
+		for (String className : allExactNames) {
+			List<TransformUnit> matched = new ArrayList<>();
+			for (int i = 0; i < snapshot.length; i++) {
+				if (unitTargets.get(i) == null || unitTargets.get(i).contains(className) || matchesPrefix(unitPrefixes.get(i), className)) {
+					matched.add(snapshot[i]);
+				}
+			}
+			exactMatches.put(className, matched.toArray(new TransformUnit[0]));
+		}
+	}
+
+	private static boolean matchesPrefix(Set<String> prefixes, String className) {
+		for (String prefix : prefixes) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the units to consult for the given class.
+	 */
+	TransformUnit[] lookup(String className) {
+		TransformUnit[] exact = exactMatches.get(className);
+		if (exact != null) {
+			return exact;
+		}
+
+		boolean prefixMatched = false;
+		for (String prefix : prefixes) {
+			if (className.startsWith(prefix)) {
+				prefixMatched = true;
+				break;
+			}
+		}
+		if (!prefixMatched) {
+			return wildcardUnits;
+		}
+
+		List<TransformUnit> matched = new ArrayList<>();
+		for (int i = 0; i < snapshot.length; i++) {
+			if (unitPrefixes.get(i) == null || matchesPrefix(unitPrefixes.get(i), className)) {
+				matched.add(snapshot[i]);
+			}
+		}
+		return matched.toArray(new TransformUnit[0]);
+	}
+
+	/**
+	 * Returns true if the result of {@link #lookup(String)} contains any unit that declared its targets.
+	 */
+	boolean isHit(TransformUnit[] lookupResult) {
+		return lookupResult != wildcardUnits;
+	}
+
+	/**
+	 * Removes the units whose target constants don't occur in the given class.
+	 */
+	TransformUnit[] filterByConstants(TransformUnit[] units, byte[] classfile) {
+		long found = 0;
+		boolean scanned = false;
+		TransformUnit[] result = null;
+		int resultLength = 0;
+		for (int i = 0; i < units.length; i++) {
+			Long mask = constantMasks.get(units[i]);
+			if (mask != null) {
+				if (!scanned) {
+					found = ConstantPoolScanner.findPrefixes(classfile, constantPrefixes);
+					scanned = true;
+				}
+				if ((found & mask) == 0) {
+					if (result == null) {
+						result = new TransformUnit[units.length];
+						System.arraycopy(units, 0, result, 0, i);
+						resultLength = i;
+					}
+					continue;
+				}
+			}
+			if (result != null) {
+				result[resultLength++] = units[i];
+			}
+		}
+		if (result == null) {
+			return units;
+		} else if (resultLength == 0) {
+			return NO_UNITS;
+		} else {
+			return Arrays.copyOf(result, resultLength);
+		}
+	}
+
+	/**
+	 * Returns the units this index was built from, in registration order.
+	 */
+	TransformUnit[] getUnits() {
+		return snapshot;
+	}
+
+	/**
+	 * Checks whether this index was built from the current content of the given unit list.
+	 */
+	boolean isUpToDate(List<TransformUnit> units) {
+		Iterator<TransformUnit> it = units.iterator();
+		for (TransformUnit unit : snapshot) {
+			if (!it.hasNext() || it.next() != unit) {
+				return false;
+			}
+		}
+		return !it.hasNext();
+	}
+}
@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.INFO;
 import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
@@ -255,6 +256,17 @@ public class AuthlibLogInterceptor implements TransformUnit {
 		return Optional.empty();
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(singleton("com.mojang.authlib."));
+	}
+
+	@Override
+	public boolean isCacheable() {
+		// the result depends on which class loaders have been intercepted
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return "Authlib Log Interceptor";
@@ -16,9 +16,11 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static org.objectweb.asm.Opcodes.ASM9;
 import static org.objectweb.asm.Opcodes.ISTORE;
 import java.util.Optional;
+import java.util.Set;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import moe.yushi.authlibinjector.transform.TransformContext;
@@ -56,6 +58,11 @@ public class BungeeCordAllowedCharactersTransformer implements TransformUnit {
 		return Optional.empty();
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(singleton("net.md_5.bungee.util.AllowedCharacters"));
+	}
+
 	@Override
 	public String toString() {
 		return "BungeeCord Allowed Characters Transformer";
@@ -16,10 +16,12 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static org.objectweb.asm.Opcodes.ASM9;
 import static org.objectweb.asm.Opcodes.ICONST_1;
 import static org.objectweb.asm.Opcodes.IRETURN;
 import java.util.Optional;
+import java.util.Set;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import moe.yushi.authlibinjector.transform.TransformContext;
@@ -58,6 +60,11 @@ public class BungeeCordProfileKeyTransformUnit implements TransformUnit {
 		}
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(singleton("net.md_5.bungee.EncryptionUtil"));
+	}
+
 	@Override
 	public String toString() {
 		return "BungeeCord Profile Key Transformer";
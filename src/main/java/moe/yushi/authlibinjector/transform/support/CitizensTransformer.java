@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static org.objectweb.asm.Opcodes.ALOAD;
 import static org.objectweb.asm.Opcodes.ASM9;
 import static org.objectweb.asm.Opcodes.F_SAME;
@@ -25,6 +26,7 @@ import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
 import static org.objectweb.asm.Opcodes.RETURN;
 
 import java.util.Optional;
+import java.util.Set;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
@@ -74,6 +76,11 @@ public class CitizensTransformer implements TransformUnit {
 		return Optional.empty();
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(singleton("net.citizensnpcs.Settings$Setting"));
+	}
+
 	@Override
 	public String toString() {
 		return "Citizens2 Support";
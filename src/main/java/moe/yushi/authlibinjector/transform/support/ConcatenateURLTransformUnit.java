@@ -21,7 +21,10 @@ import static org.objectweb.asm.Opcodes.ARETURN;
 import static org.objectweb.asm.Opcodes.ASM9;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import moe.yushi.authlibinjector.transform.CallbackMethod;
@@ -73,6 +76,13 @@ public class ConcatenateURLTransformUnit implements TransformUnit {
 		}
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(new HashSet<>(Arrays.asList(
+				"com.mojang.authlib.HttpAuthenticationService",
+				"com.mojang.authlib.HttpDiscoveryService")));
+	}
+
 	@Override
 	public String toString() {
 		return "ConcatenateURL Workaround";
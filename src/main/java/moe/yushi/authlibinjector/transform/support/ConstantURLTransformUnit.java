@@ -16,10 +16,14 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
+
 import java.util.Optional;
+import java.util.Set;
 
 import moe.yushi.authlibinjector.httpd.URLProcessor;
 import moe.yushi.authlibinjector.transform.LdcTransformUnit;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
 
 public class ConstantURLTransformUnit extends LdcTransformUnit {
 
@@ -34,6 +38,17 @@ public class ConstantURLTransformUnit extends LdcTransformUnit {
 		return urlProcessor.transformURL(input);
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetConstants() {
+		// URLProcessor only transforms URLs starting with "http"
+		return Optional.of(singleton("http"));
+	}
+
+	@Override
+	protected Optional<MultiPatternMatcher> getConstantMatcher() {
+		return urlProcessor.getDomainMatcher();
+	}
+
 	@Override
 	public String toString() {
 		return "Constant URL Transformer";
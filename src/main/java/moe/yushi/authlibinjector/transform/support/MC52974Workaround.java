@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static java.util.Collections.unmodifiableSet;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import static moe.yushi.authlibinjector.util.Logging.Level.INFO;
@@ -83,6 +84,11 @@ public class MC52974Workaround implements TransformUnit {
 		}
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(singleton("com.mojang.authlib.yggdrasil.YggdrasilMinecraftSessionService"));
+	}
+
 	@Override
 	public String toString() {
 		return "MC-52974 Workaround";
@@ -25,8 +25,11 @@ import static org.objectweb.asm.Opcodes.CHECKCAST;
 import static org.objectweb.asm.Opcodes.DUP;
 import static org.objectweb.asm.Opcodes.GETFIELD;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import org.objectweb.asm.ClassVisitor;
@@ -131,6 +134,13 @@ public class MC52974_1710Workaround {
 			});
 		}
 
+		@Override
+		public Optional<Set<String>> getTargetClasses() {
+			return Optional.of(new HashSet<>(Arrays.asList(
+					"bbs",
+					"net.minecraft.util.Session")));
+		}
+
 		@Override
 		public String toString() {
 			return "1.7.10 MC-52974 Workaround (Session)";
@@ -174,6 +184,13 @@ public class MC52974_1710Workaround {
 			});
 		}
 
+		@Override
+		public Optional<Set<String>> getTargetClasses() {
+			return Optional.of(new HashSet<>(Arrays.asList(
+					"gb",
+					"net.minecraft.network.play.server.S0CPacketSpawnPlayer")));
+		}
+
 		@Override
 		public String toString() {
 			return "1.7.10 MC-52974 Workaround (S0CPacketSpawnPlayer)";
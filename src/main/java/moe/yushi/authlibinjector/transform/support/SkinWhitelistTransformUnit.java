@@ -23,8 +23,11 @@ import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
 import static moe.yushi.authlibinjector.util.Logging.log;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -148,6 +151,14 @@ public class SkinWhitelistTransformUnit implements TransformUnit {
 		}
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(new HashSet<>(Arrays.asList(
+				"com.mojang.authlib.yggdrasil.YggdrasilMinecraftSessionService",
+				"com.mojang.authlib.yggdrasil.TextureUrlChecker",
+				"com.mojang.authlib.services.MinecraftServicesDiscoveryService")));
+	}
+
 	@Override
 	public String toString() {
 		return "Texture Whitelist Transformer";
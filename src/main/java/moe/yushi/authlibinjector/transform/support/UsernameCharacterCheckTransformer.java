@@ -16,8 +16,10 @@
  */
 package moe.yushi.authlibinjector.transform.support;
 
+import static java.util.Collections.singleton;
 import static org.objectweb.asm.Opcodes.*;
 import java.util.Optional;
+import java.util.Set;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import moe.yushi.authlibinjector.transform.TransformContext;
@@ -95,6 +97,11 @@ public class UsernameCharacterCheckTransformer implements TransformUnit {
 		});
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetConstants() {
+		return Optional.of(singleton("Invalid characters in username"));
+	}
+
 	@Override
 	public String toString() {
 		return "Username Character Check Transformer";
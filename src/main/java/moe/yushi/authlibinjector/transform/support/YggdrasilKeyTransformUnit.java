@@ -32,9 +32,12 @@ import java.security.InvalidKeyException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -228,6 +231,14 @@ public class YggdrasilKeyTransformUnit implements TransformUnit {
 		}
 	}
 
+	@Override
+	public Optional<Set<String>> getTargetClasses() {
+		return Optional.of(new HashSet<>(Arrays.asList(
+				"com.mojang.authlib.properties.Property",
+				"com.mojang.authlib.yggdrasil.YggdrasilServicesKeyInfo",
+				"com.mojang.authlib.services.MinecraftServicesKeyInfo")));
+	}
+
 	@Override
 	public String toString() {
 		return "Yggdrasil Public Key Transformer";
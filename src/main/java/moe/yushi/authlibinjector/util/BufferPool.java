@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of transfer buffers for streaming bodies.
+ *
+ * Buffers are shared across threads rather than kept in thread locals,
+ * so that a large number of short-lived (e.g. virtual) threads doesn't retain one buffer each.
+ */
+public final class BufferPool {
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int MAX_POOLED_BUFFERS = 16;
+
+	private static final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+	/**
+	 * Returns a buffer of {@link #BUFFER_SIZE} bytes. Its content is undefined.
+	 */
+	public static byte[] acquire() {
+		byte[] buf = pool.poll();
+		return buf == null ? new byte[BUFFER_SIZE] : buf;
+	}
+
+	/**
+	 * Returns the buffer to the pool. The caller must not use it afterwards.
+	 */
+	public static void release(byte[] buf) {
+		if (buf.length == BUFFER_SIZE) {
+			pool.offer(buf);
+		}
+	}
+
+	private BufferPool() {}
+}
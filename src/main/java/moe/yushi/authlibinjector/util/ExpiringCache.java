@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded in-memory cache whose entries expire after a fixed time.
+ *
+ * An entry may be negative, i.e. record that the value doesn't exist, and negative entries have their own TTL.
+ * When the cache is full, the least recently used entry is evicted. For concurrency, the cache is split into
+ * segments by the hash of the key, each of which is guarded by its own lock.
+ *
+ * Expired entries can be kept for a while longer:
+ * within the stale-while-revalidate window, {@link #get} still returns them (marked as stale),
+ * so that the caller can use them while refreshing them in the background;
+ * within the stale-if-error window, they are only returned by {@link #getStaleIfError},
+ * which the caller uses when it fails to refresh the entry.
+ */
+public final class ExpiringCache<K, V> {
+
+	public static final class Entry<V> {
+
+		private final /* nullable */ V value;
+		private final long createdAt;
+		private final long expiresAt;
+		private final LongSupplier clock;
+
+		Entry(V value, long createdAt, long expiresAt, LongSupplier clock) {
+			this.value = value;
+			this.createdAt = createdAt;
+			this.expiresAt = expiresAt;
+			this.clock = clock;
+		}
+
+		/**
+		 * @return the value, or empty if this is a negative entry
+		 */
+		public Optional<V> getValue() {
+			return Optional.ofNullable(value);
+		}
+
+		/**
+		 * Returns the time of the cache's clock (by default {@link System#nanoTime()}) when the entry was added.
+		 */
+		public long getCreatedAt() {
+			return createdAt;
+		}
+
+		/**
+		 * Returns true if the entry has expired, and should be refreshed.
+		 */
+		public boolean isStale() {
+			return clock.getAsLong() - expiresAt >= 0;
+		}
+	}
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final class Segment extends LinkedHashMap<K, ExpiringCache.Entry<V>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, ExpiringCache.Entry<V>> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private final List<Segment> segments = new ArrayList<>();
+	private final long ttl;
+	private final long negativeTtl;
+	private final long staleWhileRevalidate;
+	private final long staleIfError;
+	private final LongSupplier clock;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder negativeHits = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder staleIfErrorHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize the maximum number of entries, positive
+	 * @param ttl how long a value is kept, 0 to not cache values
+	 * @param negativeTtl how long a negative entry is kept, 0 to not cache negative entries
+	 */
+	public ExpiringCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+		this(maxSize, ttl, negativeTtl, 0, 0, unit);
+	}
+
+	/**
+	 * @param maxSize the maximum number of entries, positive
+	 * @param ttl how long a value is kept, 0 to not cache values
+	 * @param negativeTtl how long a negative entry is kept, 0 to not cache negative entries
+	 * @param staleWhileRevalidate how long after expiring an entry is still returned by {@link #get}
+	 * @param staleIfError how long after expiring an entry is still returned by {@link #getStaleIfError}
+	 */
+	public ExpiringCache(int maxSize, long ttl, long negativeTtl, long staleWhileRevalidate, long staleIfError, TimeUnit unit) {
+		this(maxSize, ttl, negativeTtl, staleWhileRevalidate, staleIfError, unit, System::nanoTime);
+	}
+
+	/**
+	 * @param clock the source of the current time in nanoseconds, like {@link System#nanoTime()}
+	 */
+	public ExpiringCache(int maxSize, long ttl, long negativeTtl, long staleWhileRevalidate, long staleIfError, TimeUnit unit, LongSupplier clock) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		int segmentCount = maxSize >= MAX_SEGMENTS * 4 ? MAX_SEGMENTS : 1;
+		int capacity = (maxSize + segmentCount - 1) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments.add(new Segment(capacity));
+		}
+		this.ttl = unit.toNanos(ttl);
+		this.negativeTtl = unit.toNanos(negativeTtl);
+		this.staleWhileRevalidate = unit.toNanos(staleWhileRevalidate);
+		this.staleIfError = unit.toNanos(staleIfError);
+		this.clock = clock;
+	}
+
+	private long getRetention() {
+		return Math.max(staleWhileRevalidate, staleIfError);
+	}
+
+	/**
+	 * Returns how long a value is kept before it expires.
+	 */
+	public long getTtl(TimeUnit unit) {
+		return unit.convert(ttl, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how long a negative entry is kept before it expires.
+	 */
+	public long getNegativeTtl(TimeUnit unit) {
+		return unit.convert(negativeTtl, TimeUnit.NANOSECONDS);
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return segments.get((h & 0x7fffffff) % segments.size());
+	}
+
+	/**
+	 * Returns the entry of the key, if it's present and hasn't expired,
+	 * or has expired but is still within the stale-while-revalidate window.
+	 */
+	public Optional<Entry<V>> get(K key) {
+		Entry<V> entry = getUnexpired(key, staleWhileRevalidate);
+		if (entry == null) {
+			misses.increment();
+			return Optional.empty();
+		}
+		if (entry.isStale()) {
+			staleHits.increment();
+		} else if (entry.value == null) {
+			negativeHits.increment();
+		} else {
+			hits.increment();
+		}
+		return Optional.of(entry);
+	}
+
+	/**
+	 * Returns the entry of the key, if it's present and is within the stale-if-error window.
+	 * This is meant for when the caller fails to get a fresh value.
+	 */
+	public Optional<Entry<V>> getStaleIfError(K key) {
+		Entry<V> entry = getUnexpired(key, staleIfError);
+		if (entry == null) {
+			return Optional.empty();
+		}
+		staleIfErrorHits.increment();
+		return Optional.of(entry);
+	}
+
+	private /* nullable */ Entry<V> getUnexpired(K key, long maxStale) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Entry<V> entry = segment.get(key);
+			if (entry == null) {
+				return null;
+			}
+			long staleness = clock.getAsLong() - entry.expiresAt;
+			if (staleness >= getRetention()) {
+				segment.remove(key);
+				return null;
+			}
+			return staleness < maxStale ? entry : null;
+		}
+	}
+
+	/**
+	 * Adds or replaces the entry of the key.
+	 *
+	 * @param value the value, or null to add a negative entry
+	 */
+	public void put(K key, /* nullable */ V value) {
+		long entryTtl = value == null ? negativeTtl : ttl;
+		if (entryTtl <= 0) {
+			return;
+		}
+		long now = clock.getAsLong();
+		Entry<V> entry = new Entry<>(value, now, now + entryTtl, clock);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	/**
+	 * Adds an entry with the given remaining time to live, e.g. one that is loaded from disk.
+	 * The entry is dropped if it has been expired for longer than the stale windows.
+	 * Unlike {@link #put}, this doesn't replace an existing entry.
+	 *
+	 * @param value the value, or null to add a negative entry
+	 * @param remainingTtl the time until the entry expires, negative if it has already expired
+	 */
+	public void restore(K key, /* nullable */ V value, long remainingTtl, TimeUnit unit) {
+		long remaining = unit.toNanos(remainingTtl);
+		if (remaining <= 0 && -remaining >= getRetention()) {
+			return;
+		}
+		long now = clock.getAsLong();
+		Entry<V> entry = new Entry<>(value, now, now + remaining, clock);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.putIfAbsent(key, entry);
+		}
+	}
+
+	public void invalidate(K key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of entries, including the expired ones that haven't been removed yet.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups that found a fresh entry with a value.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found a fresh negative entry.
+	 */
+	public long getNegativeHits() {
+		return negativeHits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry within the stale-while-revalidate window.
+	 */
+	public long getStaleHits() {
+		return staleHits.sum();
+	}
+
+	/**
+	 * Returns the number of entries returned by {@link #getStaleIfError}.
+	 */
+	public long getStaleIfErrorHits() {
+		return staleIfErrorHits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of entries evicted because the cache was full.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public void resetMetrics() {
+		hits.reset();
+		negativeHits.reset();
+		staleHits.reset();
+		staleIfErrorHits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Sends requests with java.net.http.HttpClient (Java 11+), through reflection, since we target Java 8.
+ *
+ * The client negotiates HTTP/2 through ALPN, so concurrent requests to the same server
+ * are multiplexed over a single connection. It falls back to HTTP/1.1 if the server doesn't support HTTP/2.
+ */
+final class Http2Transport {
+
+	private final Object client;
+	private final /* nullable */ Duration readTimeout;
+
+	private final Method newRequestBuilder;
+	private final Method requestMethod;
+	private final Method requestHeader;
+	private final Method requestTimeout;
+	private final Method requestBuild;
+	private final Method ofByteArray;
+	private final Object noBody;
+	private final Object byteArrayHandler;
+	private final Method send;
+	private final Method statusCode;
+	private final Method body;
+	private final Method version;
+	private final Object http2;
+	private final Class<?> timeoutException;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Http2Transport(int connectTimeout, int readTimeout) throws ReflectiveOperationException {
+		Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+		Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+		Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+		Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+		Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+		Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+		Class<?> bodyPublisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+		Class<?> bodyPublishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+		Class<?> bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+		Class<?> bodyHandlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+		Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+
+		http2 = Enum.valueOf((Class) versionClass, "HTTP_2");
+		Object builder = clientClass.getMethod("newBuilder").invoke(null);
+		builder = clientBuilderClass.getMethod("version", versionClass).invoke(builder, http2);
+		// the same as HttpURLConnection, which follows redirects but not from https to http
+		builder = clientBuilderClass.getMethod("followRedirects", redirectClass).invoke(builder, Enum.valueOf((Class) redirectClass, "NORMAL"));
+		if (connectTimeout > 0) {
+			builder = clientBuilderClass.getMethod("connectTimeout", Duration.class).invoke(builder, Duration.ofMillis(connectTimeout));
+		}
+		client = clientBuilderClass.getMethod("build").invoke(builder);
+		this.readTimeout = readTimeout > 0 ? Duration.ofMillis(readTimeout) : null;
+
+		newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+		requestMethod = requestBuilderClass.getMethod("method", String.class, bodyPublisherClass);
+		requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+		requestTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+		requestBuild = requestBuilderClass.getMethod("build");
+		ofByteArray = bodyPublishersClass.getMethod("ofByteArray", byte[].class);
+		noBody = bodyPublishersClass.getMethod("noBody").invoke(null);
+		byteArrayHandler = bodyHandlersClass.getMethod("ofByteArray").invoke(null);
+		send = clientClass.getMethod("send", requestClass, bodyHandlerClass);
+		statusCode = responseClass.getMethod("statusCode");
+		body = responseClass.getMethod("body");
+		version = responseClass.getMethod("version");
+		timeoutException = Class.forName("java.net.http.HttpTimeoutException");
+	}
+
+	/**
+	 * @param connectTimeout the connect timeout in milliseconds, 0 for infinite
+	 * @param readTimeout the timeout of receiving the response in milliseconds, 0 for infinite
+	 * @return the transport, or empty if java.net.http is not available
+	 */
+	static Optional<Http2Transport> create(int connectTimeout, int readTimeout) {
+		try {
+			return Optional.of(new Http2Transport(connectTimeout, readTimeout));
+		} catch (ClassNotFoundException e) {
+			return Optional.empty();
+		} catch (InvocationTargetException e) {
+			log(DEBUG, "java.net.http is not available", e.getCause());
+			return Optional.empty();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log(DEBUG, "java.net.http is not available", e);
+			return Optional.empty();
+		}
+	}
+
+	static final class Response {
+
+		private final byte[] body;
+		private final boolean http2;
+
+		Response(byte[] body, boolean http2) {
+			this.body = body;
+			this.http2 = http2;
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+
+		/**
+		 * Returns true if the response came over HTTP/2, false if the server only supports HTTP/1.1.
+		 */
+		boolean isHttp2() {
+			return http2;
+		}
+	}
+
+	/**
+	 * Sends a request, and returns the response body.
+	 *
+	 * @throws IOException if the request fails, or the response status indicates an error
+	 */
+	Response send(String method, String url, /* nullable */ byte[] payload, /* nullable */ String contentType) throws IOException {
+		Object response;
+		try {
+			URI uri;
+			try {
+				uri = new URI(url);
+			} catch (URISyntaxException e) {
+				throw new IOException("Invalid URL: " + url, e);
+			}
+			Object builder = newRequestBuilder.invoke(null, uri);
+			builder = requestMethod.invoke(builder, method, payload == null ? noBody : ofByteArray.invoke(null, (Object) payload));
+			if (contentType != null) {
+				builder = requestHeader.invoke(builder, "Content-Type", contentType);
+			}
+			if (readTimeout != null) {
+				builder = requestTimeout.invoke(builder, readTimeout);
+			}
+			response = send.invoke(client, requestBuild.invoke(builder), byteArrayHandler);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException interrupted = new InterruptedIOException("Interrupted while requesting " + url);
+				interrupted.initCause(cause);
+				throw interrupted;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new IOException(cause);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+
+		try {
+			int status = (int) statusCode.invoke(response);
+			if (status >= 400) {
+				throw UpstreamException.ofStatus(status, url, null);
+			}
+			return new Response((byte[]) body.invoke(response), version.invoke(response) == http2);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	boolean isTimeout(IOException e) {
+		return timeoutException.isInstance(e);
+	}
+}
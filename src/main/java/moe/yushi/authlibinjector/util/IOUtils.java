@@ -22,52 +22,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.net.HttpURLConnection;
-import java.net.Proxy;
-import java.net.URL;
 
 public final class IOUtils {
 
 	public static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
 	public static final String CONTENT_TYPE_TEXT = "text/plain; charset=utf-8";
 
-	private static HttpURLConnection createConnection(String url, Proxy proxy) throws IOException {
-		if (proxy == null) {
-			return (HttpURLConnection) new URL(url).openConnection();
-		} else {
-			return (HttpURLConnection) new URL(url).openConnection(proxy);
-		}
-	}
-
-	public static byte[] http(String method, String url) throws IOException {
-		return http(method, url, null);
-	}
-
-	public static byte[] http(String method, String url, Proxy proxy) throws IOException {
-		HttpURLConnection conn = createConnection(url, proxy);
-		conn.setRequestMethod(method);
-		try (InputStream in = conn.getInputStream()) {
-			return asBytes(in);
-		}
-	}
-
-	public static byte[] http(String method, String url, byte[] payload, String contentType) throws IOException {
-		return http(method, url, payload, contentType, null);
-	}
-
-	public static byte[] http(String method, String url, byte[] payload, String contentType, Proxy proxy) throws IOException {
-		HttpURLConnection conn = createConnection(url, proxy);
-		conn.setRequestMethod(method);
-		conn.setDoOutput(true);
-		conn.setRequestProperty("Content-Type", contentType);
-		try (OutputStream out = conn.getOutputStream()) {
-			out.write(payload);
-		}
-		try (InputStream in = conn.getInputStream()) {
-			return asBytes(in);
-		}
-	}
-
 	public static byte[] asBytes(InputStream in) throws IOException {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		transfer(in, out);
@@ -75,10 +35,14 @@ public final class IOUtils {
 	}
 
 	public static void transfer(InputStream from, OutputStream to) throws IOException {
-		byte[] buf = new byte[8192];
-		int read;
-		while ((read = from.read(buf)) != -1) {
-			to.write(buf, 0, read);
+		byte[] buf = BufferPool.acquire();
+		try {
+			int read;
+			while ((read = from.read(buf)) != -1) {
+				to.write(buf, 0, read);
+			}
+		} finally {
+			BufferPool.release(buf);
 		}
 	}
 
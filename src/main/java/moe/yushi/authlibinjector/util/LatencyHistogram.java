@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, in nanoseconds.
+ *
+ * Values are counted in log-linear buckets (32 buckets per power of two, like HdrHistogram),
+ * so percentiles have a relative error of at most 1/32. Values above ~68 seconds are
+ * counted in the last bucket; the maximum is always exact.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_VALUE_BITS = 36;
+	private static final int OVERFLOW_BUCKET = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	private static final int BUCKETS = OVERFLOW_BUCKET + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	static int bucketOf(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) Math.max(value, 0);
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		if (msb >= MAX_VALUE_BITS) {
+			return OVERFLOW_BUCKET;
+		}
+		int shift = msb - SUB_BUCKET_BITS;
+		// (value >>> shift) is in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the largest value that is counted in the given bucket.
+	 */
+	static long highestValueOf(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		} else if (bucket == OVERFLOW_BUCKET) {
+			return Long.MAX_VALUE;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketOf(nanos));
+		sum.add(nanos);
+		long currentMax = max.get();
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Clears the histogram. Values recorded concurrently may or may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		sum.reset();
+		max.set(0);
+	}
+
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(LatencyHistogram histogram) {
+			counts = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = histogram.counts.get(i);
+				count += counts[i];
+			}
+			// computed from the buckets, so that percentiles are consistent with it
+			this.count = count;
+			this.sum = histogram.sum.sum();
+			this.max = histogram.max.get();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the smallest value that is greater than or equal to the given fraction of all the values.
+		 *
+		 * @param quantile between 0 and 1
+		 */
+		public long getValueAtQuantile(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValueOf(i), max);
+				}
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds whether any of a fixed set of ASCII patterns occurs in the input.
+ *
+ * This is an Aho-Corasick automaton, with the failure links folded into a
+ * full transition table, so each input character costs one array lookup.
+ * Non-ASCII characters never match any pattern.
+ */
+public final class MultiPatternMatcher {
+
+	private static final int ALPHABET = 128;
+
+	private final int[][] transitions;
+	private final boolean[] terminal;
+
+	public MultiPatternMatcher(Collection<String> patterns) {
+		List<int[]> trie = new ArrayList<>();
+		List<Boolean> output = new ArrayList<>();
+		trie.add(newState());
+		output.add(false);
+
+		for (String pattern : patterns) {
+			if (pattern.isEmpty()) {
+				throw new IllegalArgumentException("Empty pattern");
+			}
+			int state = 0;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c >= ALPHABET) {
+					throw new IllegalArgumentException("Non-ASCII pattern: " + pattern);
+				}
+				if (trie.get(state)[c] == -1) {
+					trie.get(state)[c] = trie.size();
+					trie.add(newState());
+					output.add(false);
+				}
+				state = trie.get(state)[c];
+			}
+			output.set(state, true);
+		}
+
+		transitions = trie.toArray(new int[0][]);
+		terminal = new boolean[transitions.length];
+		for (int i = 0; i < terminal.length; i++) {
+			terminal[i] = output.get(i);
+		}
+
+		// breadth-first construction of failure links
+		int[] failure = new int[transitions.length];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int c = 0; c < ALPHABET; c++) {
+			int next = transitions[0][c];
+			if (next == -1) {
+				transitions[0][c] = 0;
+			} else {
+				failure[next] = 0;
+				queue.add(next);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			terminal[state] |= terminal[failure[state]];
+			for (int c = 0; c < ALPHABET; c++) {
+				int next = transitions[state][c];
+				if (next == -1) {
+					transitions[state][c] = transitions[failure[state]][c];
+				} else {
+					failure[next] = transitions[failure[state]][c];
+					queue.add(next);
+				}
+			}
+		}
+	}
+
+	private static int[] newState() {
+		int[] state = new int[ALPHABET];
+		for (int i = 0; i < ALPHABET; i++) {
+			state[i] = -1;
+		}
+		return state;
+	}
+
+	public boolean matches(CharSequence input) {
+		int state = 0;
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			state = c < ALPHABET ? transitions[state][c] : 0;
+			if (terminal[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Scans the given range of bytes. Bytes are interpreted as ASCII characters,
+	 * which works for both UTF-8 and modified UTF-8, since multi-byte sequences
+	 * never contain ASCII bytes.
+	 */
+	public boolean matches(byte[] input, int offset, int length) {
+		int state = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			int b = input[i];
+			state = b >= 0 ? transitions[state][b] : 0;
+			if (terminal[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Merges small requests that arrive within a short window into one.
+ *
+ * The first caller of a batch waits for the window to pass (or for the batch to fill up),
+ * then sends the keys of everyone who joined in one request, on its own thread.
+ * All the callers receive the result of the whole batch, and pick out their own part.
+ */
+public final class RequestBatcher<K, R> {
+
+	private static final class Batch<K, R> {
+		final Set<K> keys = new LinkedHashSet<>();
+		final CompletableFuture<R> result = new CompletableFuture<>();
+		boolean full;
+	}
+
+	private final Function<Set<K>, R> loader;
+	private final long window;
+	private final int maxBatchSize;
+
+	private final Object lock = new Object();
+	private /* nullable */ Batch<K, R> current;
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder batchedRequests = new LongAdder();
+
+	/**
+	 * @param loader sends a request for the given keys
+	 * @param window how long the first request of a batch waits for others
+	 * @param maxBatchSize the maximum number of keys in one request
+	 */
+	public RequestBatcher(Function<Set<K>, R> loader, long window, TimeUnit unit, int maxBatchSize) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive");
+		}
+		this.loader = loader;
+		this.window = unit.toNanos(window);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Returns the result of a request that includes (at least) the given keys.
+	 *
+	 * @throws UncheckedIOException if interrupted while waiting for another thread to send the batch
+	 */
+	public R execute(Set<K> keys) throws UncheckedIOException {
+		if (keys.size() >= maxBatchSize) {
+			return loader.apply(keys);
+		}
+
+		Batch<K, R> joined = null;
+		Batch<K, R> batch;
+		synchronized (lock) {
+			batch = current;
+			if (batch != null && countNewKeys(batch, keys) + batch.keys.size() <= maxBatchSize) {
+				batch.keys.addAll(keys);
+				if (batch.keys.size() == maxBatchSize) {
+					batch.full = true;
+					current = null;
+					lock.notifyAll();
+				}
+				joined = batch;
+			} else {
+				batch = new Batch<>();
+				batch.keys.addAll(keys);
+				current = batch;
+			}
+		}
+		if (joined != null) {
+			batchedRequests.increment();
+			return await(joined.result);
+		}
+
+		Set<K> batchKeys;
+		synchronized (lock) {
+			long deadline = System.nanoTime() + window;
+			long remaining = window;
+			while (!batch.full && remaining > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.nanoTime();
+			}
+			if (current == batch) {
+				current = null;
+			}
+			batchKeys = Collections.unmodifiableSet(new LinkedHashSet<>(batch.keys));
+		}
+
+		batches.increment();
+		try {
+			R result = loader.apply(batchKeys);
+			batch.result.complete(result);
+			return result;
+		} catch (Throwable e) {
+			batch.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static <K> int countNewKeys(Batch<K, ?> batch, Set<K> keys) {
+		int count = 0;
+		for (K key : keys) {
+			if (!batch.keys.contains(key)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static <R> R await(CompletableFuture<R> future) throws UncheckedIOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for a batched request"));
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of requests sent for batches.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * Returns the number of calls that joined the batch of another call.
+	 */
+	public long getBatchedRequests() {
+		return batchedRequests.sum();
+	}
+
+	public void resetMetrics() {
+		batches.reset();
+		batchedRequests.reset();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests to an endpoint, the failed ones, and their latencies.
+ */
+public final class RequestMetrics {
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * @param nanos the duration of the request, in nanoseconds
+	 * @param failed whether the request failed
+	 */
+	public void record(long nanos, boolean failed) {
+		latency.record(nanos);
+		if (failed) {
+			errors.increment();
+		}
+		requests.increment();
+	}
+
+	/**
+	 * Records a request that started at the given {@link System#nanoTime()}.
+	 */
+	public void recordSince(long startNanos, boolean failed) {
+		record(System.nanoTime() - startNanos, failed);
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public LatencyHistogram.Snapshot getLatency() {
+		return latency.snapshot();
+	}
+
+	public void reset() {
+		requests.reset();
+		errors.reset();
+		latency.reset();
+	}
+}
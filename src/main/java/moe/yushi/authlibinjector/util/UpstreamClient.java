@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The HTTP client for requests to upstream servers (the authentication server, Mojang, texture servers).
+ *
+ * Every request has a connect timeout and a read timeout, so that a hung server can't pin the caller forever.
+ * Concurrent requests are limited per route (scheme, host, port and proxy); a request waits at most
+ * the connect timeout for a free slot. Idle connections are kept alive and reused by the JDK's keep-alive cache,
+ * given that the response body is fully read and closed, which this class takes care of.
+ *
+ * Optionally, on Java 11+, {@link #request} goes through java.net.http with HTTP/2,
+ * so that concurrent requests to the same server share one multiplexed connection.
+ * Requests through a proxy, and streamed exchanges, always use HttpURLConnection.
+ */
+public final class UpstreamClient {
+
+	public static final class Route {
+
+		private final String name;
+		private final /* nullable */ Semaphore permits;
+
+		private final AtomicInteger activeConnections = new AtomicInteger();
+		private final AtomicInteger waitingRequests = new AtomicInteger();
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder http2Requests = new LongAdder();
+		private final LongAdder rejectedRequests = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+
+		private Route(String name, int maxConnections) {
+			this.name = name;
+			this.permits = maxConnections == 0 ? null : new Semaphore(maxConnections, true);
+		}
+
+		/**
+		 * Returns the route in the form of scheme://host:port, followed by the proxy if any.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public int getActiveConnections() {
+			return activeConnections.get();
+		}
+
+		public int getWaitingRequests() {
+			return waitingRequests.get();
+		}
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		/**
+		 * Returns the number of requests that were served over HTTP/2.
+		 */
+		public long getHttp2Requests() {
+			return http2Requests.sum();
+		}
+
+		/**
+		 * Returns the number of requests that failed to get a connection in time.
+		 */
+		public long getRejectedRequests() {
+			return rejectedRequests.sum();
+		}
+
+		/**
+		 * Returns the number of requests that failed due to a connect or read timeout.
+		 */
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		public void reset() {
+			requests.reset();
+			http2Requests.reset();
+			rejectedRequests.reset();
+			timeouts.reset();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * An open request to upstream. The slot of the route is held until the exchange is closed.
+	 */
+	public final class Exchange implements Closeable {
+
+		private final Route route;
+		private final HttpURLConnection connection;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Exchange(Route route, HttpURLConnection connection) {
+			this.route = route;
+			this.connection = connection;
+		}
+
+		public Route getRoute() {
+			return route;
+		}
+
+		public HttpURLConnection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Returns the response body, or the error body if the response status indicates an error.
+		 * Closing the returned stream closes the exchange.
+		 *
+		 * @return the response body, or null if there's none
+		 */
+		public /* nullable */ InputStream getResponseBody() throws IOException {
+			InputStream in;
+			try {
+				in = connection.getInputStream();
+			} catch (SocketTimeoutException e) {
+				route.timeouts.increment();
+				throw e;
+			} catch (IOException e) {
+				in = connection.getErrorStream();
+			}
+			if (in == null) {
+				return null;
+			}
+			return new FilterInputStream(in) {
+				@Override
+				public int read() throws IOException {
+					try {
+						return super.read();
+					} catch (SocketTimeoutException e) {
+						route.timeouts.increment();
+						throw e;
+					}
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					try {
+						return super.read(b, off, len);
+					} catch (SocketTimeoutException e) {
+						route.timeouts.increment();
+						throw e;
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						Exchange.this.close();
+					}
+				}
+			};
+		}
+
+		/**
+		 * Releases the slot of the route. The response body, if not consumed, is discarded.
+		 */
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release(route);
+			}
+		}
+	}
+
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int maxConnectionsPerRoute;
+	private final /* nullable */ Http2Transport http2Transport;
+
+	private static final int EXECUTOR_ROUTES = 4;
+	private static final int DEFAULT_EXECUTOR_THREADS_PER_ROUTE = 16;
+
+	private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private final Executor executor;
+
+	/**
+	 * @param connectTimeout the connect timeout in milliseconds, 0 for infinite
+	 * @param readTimeout the read timeout in milliseconds, 0 for infinite
+	 * @param maxConnectionsPerRoute the maximum number of concurrent requests to a route, 0 for unlimited
+	 */
+	public UpstreamClient(int connectTimeout, int readTimeout, int maxConnectionsPerRoute) {
+		this(connectTimeout, readTimeout, maxConnectionsPerRoute, false);
+	}
+
+	/**
+	 * @param connectTimeout the connect timeout in milliseconds, 0 for infinite
+	 * @param readTimeout the read timeout in milliseconds, 0 for infinite
+	 * @param maxConnectionsPerRoute the maximum number of concurrent requests to a route, 0 for unlimited
+	 * @param http2 whether to use HTTP/2 if supported by the JVM, see {@link #isHttp2()}
+	 */
+	public UpstreamClient(int connectTimeout, int readTimeout, int maxConnectionsPerRoute, boolean http2) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.http2Transport = http2 ? Http2Transport.create(connectTimeout, readTimeout).orElse(null) : null;
+		this.executor = createExecutor();
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * Returns true if {@link #request} uses HTTP/2, which requires Java 11 or later.
+	 */
+	public boolean isHttp2() {
+		return http2Transport != null;
+	}
+
+	private Executor createExecutor() {
+		Optional<ThreadFactory> virtualThreads = VirtualThreads.newThreadFactory("authlib-injector upstream #");
+		if (virtualThreads.isPresent()) {
+			ThreadFactory factory = virtualThreads.get();
+			return task -> factory.newThread(task).start();
+		}
+		// platform threads are bounded by the number of requests that the typical routes
+		// (the authentication server, Mojang and a texture server or two) can have in flight;
+		// when both the threads and the queue are used up, the task runs on the caller's thread
+		int threads = (maxConnectionsPerRoute == 0 ? DEFAULT_EXECUTOR_THREADS_PER_ROUTE : maxConnectionsPerRoute) * EXECUTOR_ROUTES;
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads), task -> {
+			Thread t = new Thread(task, "authlib-injector upstream #" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Returns the executor for running blocking requests in the background.
+	 * Virtual threads are used if available. Otherwise, the number of threads is bounded,
+	 * and tasks beyond the capacity of the pool run on the caller's thread.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public Collection<Route> getRoutes() {
+		return Collections.unmodifiableCollection(new ArrayList<>(routes.values()));
+	}
+
+	public void resetMetrics() {
+		routes.values().forEach(Route::reset);
+	}
+
+	private Route getRoute(URL url, /* nullable */ Proxy proxy) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String name = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		if (proxy != null && proxy.type() != Proxy.Type.DIRECT) {
+			name += " via " + proxy;
+		}
+		return routes.computeIfAbsent(name, key -> new Route(key, maxConnectionsPerRoute));
+	}
+
+	/**
+	 * Opens a request, waiting for a free slot of the route if necessary.
+	 * The caller must close the returned exchange, either directly or through its response body.
+	 *
+	 * @throws IOException if no slot is available within the connect timeout
+	 */
+	public Exchange open(String method, String url, /* nullable */ Proxy proxy) throws IOException {
+		URL parsedUrl = new URL(url);
+		Route route = getRoute(parsedUrl, proxy);
+		acquire(route);
+		boolean opened = false;
+		try {
+			HttpURLConnection conn = (HttpURLConnection) (proxy == null ? parsedUrl.openConnection() : parsedUrl.openConnection(proxy));
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+			conn.setRequestMethod(method);
+			Exchange exchange = new Exchange(route, conn);
+			opened = true;
+			return exchange;
+		} finally {
+			if (!opened) {
+				release(route);
+			}
+		}
+	}
+
+	private void acquire(Route route) throws IOException {
+		route.requests.increment();
+		if (route.permits != null) {
+			boolean acquired;
+			route.waitingRequests.incrementAndGet();
+			try {
+				if (connectTimeout == 0) {
+					route.permits.acquire();
+					acquired = true;
+				} else {
+					acquired = route.permits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for a connection to " + route, e);
+			} finally {
+				route.waitingRequests.decrementAndGet();
+			}
+			if (!acquired) {
+				route.rejectedRequests.increment();
+				throw new UpstreamException("Timed out waiting for a connection to " + route + ", " + route.permits.availablePermits() + " of " + maxConnectionsPerRoute + " available", null, -1, true);
+			}
+		}
+		route.activeConnections.incrementAndGet();
+	}
+
+	private static void release(Route route) {
+		route.activeConnections.decrementAndGet();
+		if (route.permits != null) {
+			route.permits.release();
+		}
+	}
+
+	/**
+	 * Sends a request, and returns the response body.
+	 *
+	 * @param payload the request body, or null if there's none
+	 * @param contentType the content type of the request body, or null if there's none
+	 * @throws UpstreamException if the response status indicates an error, or the request times out
+	 * @throws IOException if the request fails otherwise
+	 */
+	public byte[] request(String method, String url, /* nullable */ byte[] payload, /* nullable */ String contentType, /* nullable */ Proxy proxy) throws IOException {
+		if (http2Transport != null && (proxy == null || proxy.type() == Proxy.Type.DIRECT)) {
+			// java.net.http doesn't support SOCKS proxies
+			Route route = getRoute(new URL(url), proxy);
+			acquire(route);
+			try {
+				Http2Transport.Response response = http2Transport.send(method, url, payload, contentType);
+				if (response.isHttp2()) {
+					route.http2Requests.increment();
+				}
+				return response.getBody();
+			} catch (IOException e) {
+				if (http2Transport.isTimeout(e)) {
+					route.timeouts.increment();
+					throw UpstreamException.ofTimeout(e);
+				}
+				throw e;
+			} finally {
+				release(route);
+			}
+		}
+
+		try (Exchange exchange = open(method, url, proxy)) {
+			HttpURLConnection conn = exchange.getConnection();
+			try {
+				if (payload != null) {
+					conn.setDoOutput(true);
+					if (contentType != null) {
+						conn.setRequestProperty("Content-Type", contentType);
+					}
+					try (OutputStream out = conn.getOutputStream()) {
+						out.write(payload);
+					}
+				}
+				try (InputStream in = conn.getInputStream()) {
+					return asBytes(in);
+				} catch (SocketTimeoutException e) {
+					throw e;
+				} catch (IOException e) {
+					throw withErrorStatus(conn, url, e);
+				}
+			} catch (SocketTimeoutException e) {
+				exchange.route.timeouts.increment();
+				throw UpstreamException.ofTimeout(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns an {@link UpstreamException} carrying the status if the request failed with an error status,
+	 * otherwise returns the given exception.
+	 */
+	private static IOException withErrorStatus(HttpURLConnection conn, String url, IOException e) {
+		int status;
+		try {
+			// the failure of getInputStream() is remembered by the connection, so the request is not sent again
+			status = conn.getResponseCode();
+		} catch (IOException e1) {
+			// no response has been received
+			return e;
+		}
+		if (status < 400) {
+			return e;
+		}
+		UpstreamException statusException = UpstreamException.ofStatus(status, url, e);
+		// read the error body, so that the connection can be reused
+		InputStream err = conn.getErrorStream();
+		if (err != null) {
+			try (InputStream in = err) {
+				asBytes(in);
+			} catch (IOException e1) {
+				statusException.addSuppressed(e1);
+			}
+		}
+		return statusException;
+	}
+}
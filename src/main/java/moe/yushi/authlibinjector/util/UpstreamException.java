@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link UpstreamClient#request} when the server returns an error status, or the request times out.
+ */
+public class UpstreamException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+	private final boolean timeout;
+
+	/**
+	 * @param status the HTTP status of the response, or -1 if no response was received
+	 */
+	public UpstreamException(String message, /* nullable */ Throwable cause, int status, boolean timeout) {
+		super(message, cause);
+		this.status = status;
+		this.timeout = timeout;
+	}
+
+	static UpstreamException ofStatus(int status, String url, /* nullable */ Throwable cause) {
+		// the same message as HttpURLConnection.getInputStream()
+		return new UpstreamException("Server returned HTTP response code: " + status + " for URL: " + url, cause, status, false);
+	}
+
+	static UpstreamException ofTimeout(IOException cause) {
+		return new UpstreamException(cause.getMessage(), cause, -1, true);
+	}
+
+	/**
+	 * @return the HTTP status of the response, or -1 if no response was received
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	public boolean isTimeout() {
+		return timeout;
+	}
+}
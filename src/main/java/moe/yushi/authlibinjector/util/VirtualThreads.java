@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.util;
+
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21+), through reflection, since we target Java 8.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {}
+
+	/**
+	 * Creates a factory of virtual threads, named {@code prefix + counter}.
+	 *
+	 * @return the factory, or empty if virtual threads are not available
+	 */
+	public static Optional<ThreadFactory> newThreadFactory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, prefix, 0L);
+			return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+		} catch (NoSuchMethodException | ClassNotFoundException e) {
+			return Optional.empty();
+		} catch (InvocationTargetException e) {
+			// Java 19 & 20 without --enable-preview
+			log(DEBUG, "Virtual threads are not available", e.getCause());
+			return Optional.empty();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log(DEBUG, "Virtual threads are not available", e);
+			return Optional.empty();
+		}
+	}
+}
@@ -16,6 +16,7 @@
  */
 package moe.yushi.authlibinjector.yggdrasil;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -29,4 +30,21 @@ public class GameProfile {
 	public UUID id;
 	public String name;
 	public Map<String, PropertyValue> properties;
+
+	/**
+	 * Returns a deep copy of this profile, which can be modified without affecting this one.
+	 */
+	public GameProfile copy() {
+		GameProfile copy = new GameProfile();
+		copy.id = id;
+		copy.name = name;
+		copy.properties = new LinkedHashMap<>();
+		properties.forEach((propertyName, value) -> {
+			PropertyValue valueCopy = new PropertyValue();
+			valueCopy.value = value.value;
+			valueCopy.signature = value.signature;
+			copy.properties.put(propertyName, valueCopy);
+		});
+		return copy;
+	}
 }
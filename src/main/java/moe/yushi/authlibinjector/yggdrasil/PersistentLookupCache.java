@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.yggdrasil;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static moe.yushi.authlibinjector.util.Logging.log;
+import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
+import static moe.yushi.authlibinjector.util.Logging.Level.WARNING;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import moe.yushi.authlibinjector.yggdrasil.GameProfile.PropertyValue;
+
+/**
+ * Persists the entries of the profile and UUID caches of {@link YggdrasilClient} across restarts.
+ *
+ * The file is an append-only log of records. Every record carries the (wall clock) time when it expires,
+ * so TTLs are respected across restarts, and a later record replaces an earlier one with the same key.
+ * The file is read when the first client asks for its entries, and is compacted, i.e. rewritten with
+ * only the latest unexpired record of each key, once most of its records are obsolete.
+ *
+ * Records are written and the file is compacted by a background thread, so lookups never wait for disk I/O.
+ * Only one process may write to the file: it's guarded by a lock on a sibling ".lock" file,
+ * and a process that fails to take the lock only reads the file.
+ */
+public class PersistentLookupCache {
+
+	private static final int MAGIC = 0x41494c01;
+	private static final byte TYPE_UUID = 1;
+	private static final byte TYPE_PROFILE = 2;
+	private static final int MIN_COMPACTION_RECORDS = 1024;
+	private static final int MAX_STRING_LENGTH = 1 << 20;
+	private static final int MAX_QUEUED_RECORDS = 4096;
+	private static final long CLOSE_TIMEOUT = 5000;
+
+	abstract static class Record {
+		final String api;
+		final long expiresAt;
+
+		Record(String api, long expiresAt) {
+			this.api = api;
+			this.expiresAt = expiresAt;
+		}
+
+		abstract String getKey();
+
+		abstract void write(DataOutputStream out) throws IOException;
+	}
+
+	static final class UUIDRecord extends Record {
+		final String key; // lowercase name
+		final /* nullable */ String name;
+		final /* nullable */ UUID uuid;
+
+		/**
+		 * @param name the name as spelled by the server, or null if the name is not found
+		 */
+		UUIDRecord(String api, long expiresAt, String key, String name, UUID uuid) {
+			super(api, expiresAt);
+			this.key = key;
+			this.name = name;
+			this.uuid = uuid;
+		}
+
+		@Override
+		String getKey() {
+			return "uuid\0" + api + "\0" + key;
+		}
+
+		@Override
+		void write(DataOutputStream out) throws IOException {
+			out.writeByte(TYPE_UUID);
+			writeString(out, api);
+			out.writeLong(expiresAt);
+			writeString(out, key);
+			out.writeBoolean(name != null);
+			if (name != null) {
+				writeString(out, name);
+				writeUUID(out, uuid);
+			}
+		}
+
+		static UUIDRecord read(DataInputStream in) throws IOException {
+			String api = readString(in);
+			long expiresAt = in.readLong();
+			String key = readString(in);
+			if (in.readBoolean()) {
+				String name = readString(in);
+				return new UUIDRecord(api, expiresAt, key, name, readUUID(in));
+			} else {
+				return new UUIDRecord(api, expiresAt, key, null, null);
+			}
+		}
+	}
+
+	static final class ProfileRecord extends Record {
+		final UUID uuid;
+		final boolean withSignature;
+		final /* nullable */ GameProfile profile;
+
+		/**
+		 * @param profile the profile, or null if the profile is not found
+		 */
+		ProfileRecord(String api, long expiresAt, UUID uuid, boolean withSignature, GameProfile profile) {
+			super(api, expiresAt);
+			this.uuid = uuid;
+			this.withSignature = withSignature;
+			this.profile = profile;
+		}
+
+		@Override
+		String getKey() {
+			return "profile\0" + api + "\0" + uuid + "\0" + withSignature;
+		}
+
+		@Override
+		void write(DataOutputStream out) throws IOException {
+			out.writeByte(TYPE_PROFILE);
+			writeString(out, api);
+			out.writeLong(expiresAt);
+			writeUUID(out, uuid);
+			out.writeBoolean(withSignature);
+			out.writeBoolean(profile != null);
+			if (profile != null) {
+				writeUUID(out, profile.id);
+				writeString(out, profile.name);
+				out.writeInt(profile.properties.size());
+				for (Map.Entry<String, PropertyValue> property : profile.properties.entrySet()) {
+					writeString(out, property.getKey());
+					writeString(out, property.getValue().value);
+					out.writeBoolean(property.getValue().signature != null);
+					if (property.getValue().signature != null) {
+						writeString(out, property.getValue().signature);
+					}
+				}
+			}
+		}
+
+		static ProfileRecord read(DataInputStream in) throws IOException {
+			String api = readString(in);
+			long expiresAt = in.readLong();
+			UUID uuid = readUUID(in);
+			boolean withSignature = in.readBoolean();
+			if (!in.readBoolean()) {
+				return new ProfileRecord(api, expiresAt, uuid, withSignature, null);
+			}
+			GameProfile profile = new GameProfile();
+			profile.id = readUUID(in);
+			profile.name = readString(in);
+			profile.properties = new LinkedHashMap<>();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = readString(in);
+				PropertyValue value = new PropertyValue();
+				value.value = readString(in);
+				if (in.readBoolean()) {
+					value.signature = readString(in);
+				}
+				profile.properties.put(name, value);
+			}
+			return new ProfileRecord(api, expiresAt, uuid, withSignature, profile);
+		}
+	}
+
+	// tells the writer thread to stop
+	private static final Record END_OF_QUEUE = new UUIDRecord("", 0, "", null, null);
+
+	private final Path file;
+	private final long retention;
+
+	private boolean loaded;
+	private boolean closed;
+	// api -> records that haven't been handed out to the client yet
+	private final Map<String, List<Record>> pending = new HashMap<>();
+
+	// records waiting for the writer thread; only used if this process holds the lock
+	private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>(MAX_QUEUED_RECORDS);
+	private volatile boolean writable;
+	private /* nullable */ Thread writer;
+	private /* nullable */ FileChannel lockChannel;
+	private final LongAdder droppedRecords = new LongAdder();
+
+	// accessed by the writer thread, or by load() before the writer thread starts
+	private /* nullable */ DataOutputStream out;
+	private long recordCount;
+	private long liveRecords;
+	private boolean writeFailureReported;
+
+	/**
+	 * @param retention how long a record is kept after it expires, in milliseconds, for serving stale entries
+	 */
+	public PersistentLookupCache(Path file, long retention) {
+		this.file = file;
+		this.retention = retention;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the latest unexpired records of the given API, reading the file if it hasn't been read.
+	 * The records of each API are returned only once.
+	 */
+	synchronized List<Record> load(String api) {
+		if (!loaded && !closed) {
+			loaded = true;
+			boolean locked = lock();
+			loadFile(locked);
+			if (locked) {
+				writable = true;
+				writer = new Thread(this::runWriter, "authlib-injector-lookup-cache-writer");
+				writer.setDaemon(true);
+				writer.start();
+			}
+		}
+		List<Record> records = pending.remove(api);
+		return records == null ? Collections.emptyList() : records;
+	}
+
+	/**
+	 * Takes the lock of the file, which is held until {@link #close()}.
+	 *
+	 * @return false if the file is used by another process (or another instance in this JVM)
+	 */
+	private boolean lock() {
+		Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+		FileChannel channel = null;
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (channel.tryLock() != null) {
+				lockChannel = channel;
+				return true;
+			}
+			log(WARNING, "Lookup cache " + file + " is used by another process, new entries won't be saved");
+		} catch (OverlappingFileLockException e) {
+			log(WARNING, "Lookup cache " + file + " is already used, new entries won't be saved");
+		} catch (IOException e) {
+			log(WARNING, "Failed to lock lookup cache " + file + ", new entries won't be saved", e);
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param owner whether this process holds the lock, and is allowed to rewrite the file
+	 */
+	private void loadFile(boolean owner) {
+		Map<String, Record> latest = new LinkedHashMap<>();
+		boolean damaged = false;
+		try {
+			recordCount = readRecords(latest);
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (EOFException e) {
+			// the last record was cut off, e.g. by a crash
+			log(DEBUG, "Lookup cache " + file + " is truncated");
+			damaged = true;
+		} catch (IOException e) {
+			log(WARNING, "Ignoring malformed part of lookup cache " + file + ", keeping " + latest.size() + " entries", e);
+			damaged = true;
+		}
+
+		List<Record> live = removeExpired(latest.values());
+		for (Record record : live) {
+			pending.computeIfAbsent(record.api, api -> new ArrayList<>()).add(record);
+		}
+		log(DEBUG, "Loaded " + live.size() + " entries from lookup cache " + file);
+
+		liveRecords = live.size();
+		// appending to a damaged file would make the new records unreadable
+		if (owner && (damaged || shouldCompact())) {
+			compact(live);
+		}
+	}
+
+	/**
+	 * Reads the file into the given map, keeping the latest record of each key.
+	 *
+	 * @return the number of records read
+	 */
+	private long readRecords(Map<String, Record> latest) throws IOException {
+		long count = 0;
+		try (InputStream fileIn = Files.newInputStream(file);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Bad magic number");
+			}
+			for (;;) {
+				int type = in.read();
+				if (type == -1) {
+					return count;
+				}
+				Record record;
+				if (type == TYPE_UUID) {
+					record = UUIDRecord.read(in);
+				} else if (type == TYPE_PROFILE) {
+					record = ProfileRecord.read(in);
+				} else {
+					throw new IOException("Unknown record type " + type);
+				}
+				latest.remove(record.getKey());
+				latest.put(record.getKey(), record);
+				count++;
+			}
+		}
+	}
+
+	private List<Record> removeExpired(Collection<Record> records) {
+		long now = System.currentTimeMillis();
+		List<Record> live = new ArrayList<>();
+		for (Record record : records) {
+			if (now - record.expiresAt < retention) {
+				live.add(record);
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Returns true if the file has grown to twice as many records as it had after the last compaction.
+	 */
+	private boolean shouldCompact() {
+		return recordCount >= MIN_COMPACTION_RECORDS && recordCount > liveRecords * 2;
+	}
+
+	void appendUUID(String api, long expiresAt, String key, /* nullable */ String name, /* nullable */ UUID uuid) {
+		append(new UUIDRecord(api, expiresAt, key, name, uuid));
+	}
+
+	void appendProfile(String api, long expiresAt, UUID uuid, boolean withSignature, /* nullable */ GameProfile profile) {
+		append(new ProfileRecord(api, expiresAt, uuid, withSignature, profile));
+	}
+
+	private void append(Record record) {
+		if (!writable) {
+			// the file hasn't been checked, or is owned by another process
+			return;
+		}
+		if (!queue.offer(record)) {
+			// the disk can't keep up; the entry is still cached in memory
+			droppedRecords.increment();
+		}
+	}
+
+	private void runWriter() {
+		List<Record> batch = new ArrayList<>();
+		try {
+			for (;;) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				boolean end = batch.remove(END_OF_QUEUE);
+				write(batch);
+				batch.clear();
+				if (end) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed without draining
+		} finally {
+			closeOutput();
+		}
+	}
+
+	private void write(List<Record> records) {
+		if (records.isEmpty()) {
+			return;
+		}
+		try {
+			if (out == null) {
+				Path parent = file.toAbsolutePath().getParent();
+				Files.createDirectories(parent);
+				boolean empty = !Files.exists(file) || Files.size(file) == 0;
+				out = new DataOutputStream(new BufferedOutputStream(
+						Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+				if (empty) {
+					out.writeInt(MAGIC);
+				}
+			}
+			for (Record record : records) {
+				record.write(out);
+				recordCount++;
+			}
+			out.flush();
+		} catch (IOException e) {
+			reportWriteFailure(e);
+			closeOutput();
+			return;
+		}
+		if (shouldCompact()) {
+			closeOutput();
+			Map<String, Record> latest = new LinkedHashMap<>();
+			try {
+				readRecords(latest);
+			} catch (IOException e) {
+				log(DEBUG, "Failed to read lookup cache " + file + " for compaction", e);
+			}
+			compact(removeExpired(latest.values()));
+		}
+	}
+
+	private void compact(Collection<Record> live) {
+		closeOutput();
+		Path tmp = null;
+		try {
+			Path parent = file.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+			try (OutputStream fileOut = Files.newOutputStream(tmp);
+					DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+				tmpOut.writeInt(MAGIC);
+				for (Record record : live) {
+					record.write(tmpOut);
+				}
+			}
+			try {
+				Files.move(tmp, file, ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, REPLACE_EXISTING);
+			}
+			tmp = null;
+			log(DEBUG, "Compacted lookup cache " + file + ": " + recordCount + " -> " + live.size() + " records");
+			recordCount = live.size();
+			liveRecords = live.size();
+		} catch (IOException e) {
+			reportWriteFailure(e);
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void reportWriteFailure(IOException e) {
+		if (!writeFailureReported) {
+			writeFailureReported = true;
+			log(WARNING, "Failed to write lookup cache " + file, e);
+		}
+	}
+
+	private void closeOutput() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Returns the number of records that were not saved because the writer thread fell behind.
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.sum();
+	}
+
+	/**
+	 * Writes the queued records, closes the file and releases its lock. Later records are discarded.
+	 */
+	public void close() {
+		Thread writer;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			writable = false;
+			writer = this.writer;
+		}
+		if (writer != null) {
+			try {
+				// the queue may be full, but the writer keeps taking records from it
+				if (!queue.offer(END_OF_QUEUE, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					writer.interrupt();
+				}
+				writer.join(CLOSE_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (writer != null && writer.isAlive()) {
+			// still writing, keep the lock until the process exits
+			return;
+		}
+		synchronized (this) {
+			if (lockChannel != null) {
+				try {
+					// also releases the lock
+					lockChannel.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				lockChannel = null;
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_STRING_LENGTH) {
+			throw new IOException("Bad string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	private static UUID readUUID(DataInputStream in) throws IOException {
+		return new UUID(in.readLong(), in.readLong());
+	}
+}
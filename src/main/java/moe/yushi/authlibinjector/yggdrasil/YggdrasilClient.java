@@ -20,7 +20,6 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.singleton;
 import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
 import static moe.yushi.authlibinjector.util.IOUtils.asString;
-import static moe.yushi.authlibinjector.util.IOUtils.http;
 import static moe.yushi.authlibinjector.util.IOUtils.newUncheckedIOException;
 import static moe.yushi.authlibinjector.util.JsonUtils.asJsonArray;
 import static moe.yushi.authlibinjector.util.JsonUtils.asJsonObject;
@@ -31,34 +30,310 @@ import static moe.yushi.authlibinjector.util.Logging.Level.DEBUG;
 import static moe.yushi.authlibinjector.util.UUIDUtils.fromUnsignedUUID;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
 import java.net.Proxy;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import moe.yushi.authlibinjector.internal.org.json.simple.JSONArray;
 import moe.yushi.authlibinjector.internal.org.json.simple.JSONObject;
+import moe.yushi.authlibinjector.util.ExpiringCache;
+import moe.yushi.authlibinjector.util.RequestBatcher;
+import moe.yushi.authlibinjector.util.RequestMetrics;
+import moe.yushi.authlibinjector.util.SingleFlight;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.util.UpstreamException;
 import moe.yushi.authlibinjector.yggdrasil.GameProfile.PropertyValue;
 
 public class YggdrasilClient {
 
+	public final RequestMetrics queryUUIDsMetrics = new RequestMetrics();
+	public final RequestMetrics queryProfileMetrics = new RequestMetrics();
+
+	// concurrent identical queries share one request
+	public final SingleFlight<Set<String>, Map<String, UUID>> queryUUIDsFlights = new SingleFlight<>();
+	public final SingleFlight<ProfileKey, Optional<GameProfile>> queryProfileFlights = new SingleFlight<>();
+
 	private YggdrasilAPIProvider apiProvider;
 	private Proxy proxy;
+	private UpstreamClient upstreamClient;
+
+	private static final class ProfileKey {
+		final UUID uuid;
+		final boolean withSignature;
+
+		ProfileKey(UUID uuid, boolean withSignature) {
+			this.uuid = uuid;
+			this.withSignature = withSignature;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ProfileKey)) {
+				return false;
+			}
+			ProfileKey other = (ProfileKey) obj;
+			return uuid.equals(other.uuid) && withSignature == other.withSignature;
+		}
+
+		@Override
+		public int hashCode() {
+			return uuid.hashCode() * 31 + (withSignature ? 1 : 0);
+		}
+	}
+
+	private static final class NameEntry {
+		final String name;
+		final UUID uuid;
+
+		NameEntry(String name, UUID uuid) {
+			this.name = name;
+			this.uuid = uuid;
+		}
+	}
+
+	private volatile /* nullable */ ExpiringCache<ProfileKey, GameProfile> profileCache;
+
+	// lowercase name -> name with its original case and UUID
+	private volatile /* nullable */ ExpiringCache<String, NameEntry> uuidCache;
+
+	private volatile /* nullable */ RequestBatcher<String, Map<String, UUID>> uuidBatcher;
+
+	// keys of the stale cache entries being refreshed in the background
+	private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+	private volatile /* nullable */ PersistentLookupCache persistentCache;
+	private volatile boolean persistentEntriesRestored;
+
+	private LongSupplier cacheClock = System::nanoTime;
 
-	public YggdrasilClient(YggdrasilAPIProvider apiProvider) {
-		this(apiProvider, null);
+	public YggdrasilClient(YggdrasilAPIProvider apiProvider, UpstreamClient upstreamClient) {
+		this(apiProvider, null, upstreamClient);
 	}
 
-	public YggdrasilClient(YggdrasilAPIProvider apiProvider, Proxy proxy) {
+	public YggdrasilClient(YggdrasilAPIProvider apiProvider, Proxy proxy, UpstreamClient upstreamClient) {
 		this.apiProvider = apiProvider;
 		this.proxy = proxy;
+		this.upstreamClient = upstreamClient;
+	}
+
+	public YggdrasilAPIProvider getAPIProvider() {
+		return apiProvider;
+	}
+
+	/**
+	 * Sets the source of the current time in nanoseconds of the caches enabled afterwards,
+	 * {@link System#nanoTime()} by default.
+	 */
+	public void setCacheClock(LongSupplier clock) {
+		this.cacheClock = clock;
+	}
+
+	/**
+	 * Caches the results of {@link #queryProfile}, without serving expired profiles.
+	 */
+	public void enableProfileCache(int maxSize, long ttl, long negativeTtl) {
+		enableProfileCache(maxSize, ttl, negativeTtl, 0, 0);
+	}
+
+	/**
+	 * Caches the results of {@link #queryProfile}, including the profiles that are not found.
+	 *
+	 * @param maxSize the maximum number of cached profiles
+	 * @param ttl how long a profile is cached, in milliseconds
+	 * @param negativeTtl how long a profile that is not found is cached, in milliseconds
+	 * @param staleWhileRevalidate how long an expired profile is still served while it's refreshed in the background, in milliseconds
+	 * @param staleIfError how long an expired profile is still served if the server fails to respond, in milliseconds
+	 */
+	public void enableProfileCache(int maxSize, long ttl, long negativeTtl, long staleWhileRevalidate, long staleIfError) {
+		profileCache = new ExpiringCache<>(maxSize, ttl, negativeTtl, staleWhileRevalidate, staleIfError, TimeUnit.MILLISECONDS, cacheClock);
+	}
+
+	public Optional<ExpiringCache<?, GameProfile>> getProfileCache() {
+		return Optional.ofNullable(profileCache);
+	}
+
+	/**
+	 * Caches the results of {@link #queryUUIDs}, without serving expired names.
+	 */
+	public void enableUUIDCache(int maxSize, long ttl, long negativeTtl) {
+		enableUUIDCache(maxSize, ttl, negativeTtl, 0, 0);
+	}
+
+	/**
+	 * Caches the results of {@link #queryUUIDs}, including the names that are not found.
+	 * Names are matched case-insensitively.
+	 *
+	 * @param maxSize the maximum number of cached names
+	 * @param ttl how long a name is cached, in milliseconds
+	 * @param negativeTtl how long a name that is not found is cached, in milliseconds
+	 * @param staleWhileRevalidate how long an expired name is still served while it's refreshed in the background, in milliseconds
+	 * @param staleIfError how long an expired name is still served if the server fails to respond, in milliseconds
+	 */
+	public void enableUUIDCache(int maxSize, long ttl, long negativeTtl, long staleWhileRevalidate, long staleIfError) {
+		uuidCache = new ExpiringCache<>(maxSize, ttl, negativeTtl, staleWhileRevalidate, staleIfError, TimeUnit.MILLISECONDS, cacheClock);
 	}
 
+	public Optional<ExpiringCache<?, ?>> getUUIDCache() {
+		return Optional.ofNullable(uuidCache);
+	}
+
+	/**
+	 * Merges the UUID queries that arrive within the given window into one request.
+	 *
+	 * @param window how long the first query of a batch waits for others, in milliseconds
+	 * @param maxBatchSize the maximum number of names in one request
+	 */
+	public void enableUUIDBatching(long window, int maxBatchSize) {
+		uuidBatcher = new RequestBatcher<>(this::queryUUIDsUncached, window, TimeUnit.MILLISECONDS, maxBatchSize);
+	}
+
+	public Optional<RequestBatcher<?, ?>> getUUIDBatcher() {
+		return Optional.ofNullable(uuidBatcher);
+	}
+
+	/**
+	 * Queries the UUIDs of the given names.
+	 * Only the names that are not cached are sent to the server.
+	 * The returned map is keyed by the names as the server spells them, in the order of the request.
+	 */
 	public Map<String, UUID> queryUUIDs(Set<String> names) throws UncheckedIOException {
+		ExpiringCache<String, NameEntry> cache = uuidCache;
+		if (cache == null) {
+			return new LinkedHashMap<>(queryUUIDsFlights.execute(toFlightKey(names), () -> fetchUUIDs(names)));
+		}
+		restorePersistentEntries();
+
+		Map<String, Optional<NameEntry>> resolved = new HashMap<>();
+		Set<String> missing = new LinkedHashSet<>();
+		Set<String> stale = new LinkedHashSet<>();
+		for (String name : names) {
+			String key = name.toLowerCase(Locale.ROOT);
+			Optional<ExpiringCache.Entry<NameEntry>> cached = cache.get(key);
+			if (cached.isPresent()) {
+				resolved.put(key, cached.get().getValue());
+				if (cached.get().isStale()) {
+					stale.add(name);
+				}
+			} else {
+				missing.add(name);
+			}
+		}
+
+		if (!stale.isEmpty()) {
+			Set<String> flightKey = toFlightKey(stale);
+			refreshInBackground(flightKey, () -> queryUUIDsFlights.execute(flightKey, () -> loadUUIDs(cache, stale)));
+		}
+
+		if (!missing.isEmpty()) {
+			try {
+				Map<String, UUID> fetched = queryUUIDsFlights.execute(toFlightKey(missing), () -> loadUUIDs(cache, missing));
+				for (String name : missing) {
+					resolved.put(name.toLowerCase(Locale.ROOT), Optional.empty());
+				}
+				fetched.forEach((name, uuid) -> resolved.put(name.toLowerCase(Locale.ROOT), Optional.of(new NameEntry(name, uuid))));
+			} catch (UncheckedIOException e) {
+				if (!canServeStale(e)) {
+					throw e;
+				}
+				for (String name : missing) {
+					String key = name.toLowerCase(Locale.ROOT);
+					ExpiringCache.Entry<NameEntry> entry = cache.getStaleIfError(key).orElseThrow(() -> e);
+					resolved.put(key, entry.getValue());
+				}
+				log(DEBUG, "Query UUIDs of " + missing + " at [" + apiProvider + "] failed, serving stale entries: " + e);
+			}
+		}
+
+		Map<String, UUID> result = new LinkedHashMap<>();
+		for (String name : names) {
+			resolved.get(name.toLowerCase(Locale.ROOT))
+					.ifPresent(entry -> result.put(entry.name, entry.uuid));
+		}
+		return result;
+	}
+
+	private Map<String, UUID> loadUUIDs(ExpiringCache<String, NameEntry> cache, Set<String> names) throws UncheckedIOException {
+		Map<String, UUID> loaded = fetchUUIDs(names);
+		Map<String, NameEntry> found = new HashMap<>();
+		loaded.forEach((name, uuid) -> found.put(name.toLowerCase(Locale.ROOT), new NameEntry(name, uuid)));
+		PersistentLookupCache store = persistentCache;
+		long now = System.currentTimeMillis();
+		for (String name : names) {
+			String key = name.toLowerCase(Locale.ROOT);
+			NameEntry entry = found.get(key);
+			cache.put(key, entry);
+			if (store != null) {
+				long ttl = entry == null ? cache.getNegativeTtl(TimeUnit.MILLISECONDS) : cache.getTtl(TimeUnit.MILLISECONDS);
+				if (ttl > 0) {
+					store.appendUUID(apiProvider.toString(), now + ttl, key, entry == null ? null : entry.name, entry == null ? null : entry.uuid);
+				}
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Runs {@link #queryUUIDs} in the background.
+	 * The future fails with {@link UncheckedIOException} if the query fails.
+	 */
+	public CompletableFuture<Map<String, UUID>> queryUUIDsAsync(Set<String> names) {
+		return CompletableFuture.supplyAsync(() -> queryUUIDs(names), upstreamClient.getExecutor());
+	}
+
+	private static Set<String> toFlightKey(Set<String> names) {
+		// ordered, so that it can also be sent as the batch keys
+		Set<String> key = new LinkedHashSet<>();
+		for (String name : names) {
+			key.add(name.toLowerCase(Locale.ROOT));
+		}
+		return key;
+	}
+
+	private Map<String, UUID> fetchUUIDs(Set<String> names) throws UncheckedIOException {
+		RequestBatcher<String, Map<String, UUID>> batcher = uuidBatcher;
+		if (batcher == null) {
+			return queryUUIDsUncached(names);
+		}
+		// names are batched in lowercase, so that the same name spelt differently is only sent once;
+		// the batch may contain the names of other queries
+		Set<String> requested = toFlightKey(names);
+		Map<String, UUID> result = new LinkedHashMap<>();
+		batcher.execute(requested).forEach((name, uuid) -> {
+			if (requested.contains(name.toLowerCase(Locale.ROOT))) {
+				result.put(name, uuid);
+			}
+		});
+		return result;
+	}
+
+	private Map<String, UUID> queryUUIDsUncached(Set<String> names) throws UncheckedIOException {
+		long t0 = System.nanoTime();
+		boolean failed = true;
+		try {
+			Map<String, UUID> result = doQueryUUIDs(names);
+			failed = false;
+			return result;
+		} finally {
+			queryUUIDsMetrics.recordSince(t0, failed);
+		}
+	}
+
+	private Map<String, UUID> doQueryUUIDs(Set<String> names) throws UncheckedIOException {
 		String responseText;
 		try {
-			responseText = asString(http("POST", apiProvider.queryUUIDsByNames(),
+			responseText = asString(upstreamClient.request("POST", apiProvider.queryUUIDsByNames(),
 					JSONArray.toJSONString(names).getBytes(UTF_8), CONTENT_TYPE_JSON,
 					proxy));
 		} catch (IOException e) {
@@ -80,14 +355,153 @@ public class YggdrasilClient {
 		return Optional.ofNullable(queryUUIDs(singleton(name)).get(name));
 	}
 
+	/**
+	 * Queries the profile of the given UUID.
+	 * The returned profile is owned by the caller, and can be modified freely.
+	 */
 	public Optional<GameProfile> queryProfile(UUID uuid, boolean withSignature) throws UncheckedIOException {
+		ExpiringCache<ProfileKey, GameProfile> cache = profileCache;
+		ProfileKey key = new ProfileKey(uuid, withSignature);
+		if (cache == null) {
+			return queryProfileFlights.execute(key, () -> queryProfileUncached(uuid, withSignature))
+					.map(GameProfile::copy);
+		}
+
+		restorePersistentEntries();
+		Optional<ExpiringCache.Entry<GameProfile>> cached = cache.get(key);
+		if (cached.isPresent()) {
+			if (cached.get().isStale()) {
+				refreshInBackground(key, () -> queryProfileFlights.execute(key, () -> loadProfile(cache, key)));
+			}
+			return cached.get().getValue().map(GameProfile::copy);
+		}
+
+		Optional<GameProfile> result;
+		try {
+			result = queryProfileFlights.execute(key, () -> loadProfile(cache, key));
+		} catch (UncheckedIOException e) {
+			if (!canServeStale(e)) {
+				throw e;
+			}
+			ExpiringCache.Entry<GameProfile> entry = cache.getStaleIfError(key).orElseThrow(() -> e);
+			log(DEBUG, "Query profile of [" + uuid + "] at [" + apiProvider + "] failed, serving stale entry: " + e);
+			result = entry.getValue();
+		}
+		return result.map(GameProfile::copy);
+	}
+
+	private Optional<GameProfile> loadProfile(ExpiringCache<ProfileKey, GameProfile> cache, ProfileKey key) throws UncheckedIOException {
+		Optional<GameProfile> loaded = queryProfileUncached(key.uuid, key.withSignature);
+		cache.put(key, loaded.orElse(null));
+		PersistentLookupCache store = persistentCache;
+		if (store != null) {
+			long ttl = loaded.isPresent() ? cache.getTtl(TimeUnit.MILLISECONDS) : cache.getNegativeTtl(TimeUnit.MILLISECONDS);
+			if (ttl > 0) {
+				store.appendProfile(apiProvider.toString(), System.currentTimeMillis() + ttl, key.uuid, key.withSignature, loaded.orElse(null));
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Stores the entries of the profile and UUID caches in the given file, so that they survive restarts.
+	 * The entries in the file are loaded into the caches on the first query.
+	 */
+	public void setPersistentCache(PersistentLookupCache persistentCache) {
+		this.persistentCache = persistentCache;
+	}
+
+	private void restorePersistentEntries() {
+		PersistentLookupCache store = persistentCache;
+		if (store == null || persistentEntriesRestored) {
+			return;
+		}
+		synchronized (store) {
+			if (persistentEntriesRestored) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			ExpiringCache<String, NameEntry> names = uuidCache;
+			ExpiringCache<ProfileKey, GameProfile> profiles = profileCache;
+			for (PersistentLookupCache.Record record : store.load(apiProvider.toString())) {
+				long remainingTtl = record.expiresAt - now;
+				if (record instanceof PersistentLookupCache.UUIDRecord && names != null) {
+					PersistentLookupCache.UUIDRecord uuidRecord = (PersistentLookupCache.UUIDRecord) record;
+					NameEntry entry = uuidRecord.name == null ? null : new NameEntry(uuidRecord.name, uuidRecord.uuid);
+					names.restore(uuidRecord.key, entry, remainingTtl, TimeUnit.MILLISECONDS);
+				} else if (record instanceof PersistentLookupCache.ProfileRecord && profiles != null) {
+					PersistentLookupCache.ProfileRecord profileRecord = (PersistentLookupCache.ProfileRecord) record;
+					profiles.restore(new ProfileKey(profileRecord.uuid, profileRecord.withSignature), profileRecord.profile, remainingTtl, TimeUnit.MILLISECONDS);
+				}
+			}
+			persistentEntriesRestored = true;
+		}
+	}
+
+	/**
+	 * Returns true if a stale cache entry may be used in place of the failed query,
+	 * i.e. the server is unavailable: it returned a 5xx status, timed out, or couldn't be connected.
+	 * Other errors, such as a 4xx status or a malformed response, are not hidden.
+	 */
+	private static boolean canServeStale(UncheckedIOException e) {
+		IOException cause = e.getCause();
+		if (cause instanceof UpstreamException) {
+			UpstreamException upstreamException = (UpstreamException) cause;
+			return upstreamException.isTimeout() || upstreamException.getStatus() >= 500;
+		}
+		return cause instanceof ConnectException || cause instanceof NoRouteToHostException;
+	}
+
+	/**
+	 * Refreshes the stale cache entries of the given key, unless a refresh is already running.
+	 */
+	private void refreshInBackground(Object key, Runnable refresh) {
+		if (!refreshing.add(key)) {
+			return;
+		}
+		try {
+			upstreamClient.getExecutor().execute(() -> {
+				try {
+					refresh.run();
+				} catch (UncheckedIOException e) {
+					log(DEBUG, "Failed to refresh stale cache entries at [" + apiProvider + "]", e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+		}
+	}
+
+	/**
+	 * Runs {@link #queryProfile} in the background.
+	 * The future fails with {@link UncheckedIOException} if the query fails.
+	 */
+	public CompletableFuture<Optional<GameProfile>> queryProfileAsync(UUID uuid, boolean withSignature) {
+		return CompletableFuture.supplyAsync(() -> queryProfile(uuid, withSignature), upstreamClient.getExecutor());
+	}
+
+	private Optional<GameProfile> queryProfileUncached(UUID uuid, boolean withSignature) throws UncheckedIOException {
+		long t0 = System.nanoTime();
+		boolean failed = true;
+		try {
+			Optional<GameProfile> result = doQueryProfile(uuid, withSignature);
+			failed = false;
+			return result;
+		} finally {
+			queryProfileMetrics.recordSince(t0, failed);
+		}
+	}
+
+	private Optional<GameProfile> doQueryProfile(UUID uuid, boolean withSignature) throws UncheckedIOException {
 		String url = apiProvider.queryProfile(uuid);
 		if (withSignature) {
 			url += "?unsigned=false";
 		}
 		String responseText;
 		try {
-			responseText = asString(http("GET", url, proxy));
+			responseText = asString(upstreamClient.request("GET", url, null, null, proxy));
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.httpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.LatencyHistogram;
+
+public class OpenMetricsWriterTest {
+
+	@Test
+	public void testCounter() {
+		String text = new OpenMetricsWriter()
+				.family("test_requests", "counter", "Requests")
+				.counter("test_requests", 3, "filter", "A")
+				.counter("test_requests", 5, "filter", "B")
+				.finish();
+		assertEquals("# TYPE test_requests counter\n"
+				+ "# HELP test_requests Requests\n"
+				+ "test_requests_total{filter=\"A\"} 3\n"
+				+ "test_requests_total{filter=\"B\"} 5\n"
+				+ "# EOF\n", text);
+	}
+
+	@Test
+	public void testLabelEscaping() {
+		String text = new OpenMetricsWriter()
+				.family("test_value", "gauge", "Value")
+				.sample("test_value", 1.5, "name", "a\"b\\c\nd", "other", "x")
+				.finish();
+		assertEquals("# TYPE test_value gauge\n"
+				+ "# HELP test_value Value\n"
+				+ "test_value{name=\"a\\\"b\\\\c\\nd\",other=\"x\"} 1.5\n"
+				+ "# EOF\n", text);
+	}
+
+	@Test
+	public void testSummary() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(2_000_000_000L);
+		histogram.record(2_000_000_000L);
+		String text = new OpenMetricsWriter()
+				.family("test_seconds", "summary", "Latency")
+				.summary("test_seconds", histogram.snapshot(), "op", "x")
+				.finish();
+		assertEquals("# TYPE test_seconds summary\n"
+				+ "# HELP test_seconds Latency\n"
+				+ "test_seconds{op=\"x\",quantile=\"0.5\"} 2\n"
+				+ "test_seconds{op=\"x\",quantile=\"0.9\"} 2\n"
+				+ "test_seconds{op=\"x\",quantile=\"0.99\"} 2\n"
+				+ "test_seconds_sum{op=\"x\"} 4\n"
+				+ "test_seconds_count{op=\"x\"} 2\n"
+				+ "# EOF\n", text);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.httpd;
+
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static moe.yushi.authlibinjector.util.IOUtils.asString;
+import static moe.yushi.authlibinjector.util.JsonUtils.asJsonArray;
+import static moe.yushi.authlibinjector.util.JsonUtils.asJsonString;
+import static moe.yushi.authlibinjector.util.JsonUtils.parseJson;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.util.UUIDUtils;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.yggdrasil.YggdrasilAPIProvider;
+import moe.yushi.authlibinjector.yggdrasil.YggdrasilClient;
+
+public class QueryUUIDsFilterTest {
+
+	private static final UUID ALICE = UUID.fromString("00000000-0000-0000-0000-000000000001");
+	private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+	private final List<NanoHTTPD> servers = new ArrayList<>();
+	private QueryUUIDsFilter filter;
+
+	// if set, each server waits for the other one to receive its request before answering
+	private volatile /* nullable */ CountDownLatch bothReceived;
+	private final AtomicInteger overlappingRequests = new AtomicInteger();
+
+	/**
+	 * Starts a fake bulk lookup endpoint that knows one player.
+	 */
+	private YggdrasilClient startServer(UpstreamClient upstreamClient, String player, UUID uuid) throws IOException {
+		NanoHTTPD server = new NanoHTTPD("127.0.0.1", 0) {
+			@Override
+			public Response serve(IHTTPSession session) {
+				StringBuilder sb = new StringBuilder("[");
+				try {
+					asJsonArray(parseJson(asString(asBytes(session.getInputStream())))).forEach(element -> {
+						if (asJsonString(element).equalsIgnoreCase(player)) {
+							sb.append("{\"id\":\"").append(UUIDUtils.toUnsignedUUID(uuid)).append("\",\"name\":\"").append(player).append("\"}");
+						}
+					});
+					CountDownLatch latch = bothReceived;
+					if (latch != null) {
+						latch.countDown();
+						if (latch.await(10, TimeUnit.SECONDS)) {
+							overlappingRequests.incrementAndGet();
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return Response.newFixedLength(Status.OK, CONTENT_TYPE_JSON, sb.append(']').toString());
+			}
+		};
+		server.start();
+		servers.add(server);
+		String url = "http://127.0.0.1:" + server.getListeningPort() + "/profiles";
+		return new YggdrasilClient(new YggdrasilAPIProvider() {
+			@Override
+			public String queryUUIDsByNames() {
+				return url;
+			}
+
+			@Override
+			public String queryProfile(UUID id) {
+				throw new UnsupportedOperationException();
+			}
+		}, upstreamClient);
+	}
+
+	@BeforeEach
+	public void startServers() throws IOException {
+		UpstreamClient upstreamClient = new UpstreamClient(5000, 5000, 4);
+		YggdrasilClient customClient = startServer(upstreamClient, "Alice", ALICE);
+		YggdrasilClient mojangClient = startServer(upstreamClient, "Notch", NOTCH);
+		filter = new QueryUUIDsFilter(mojangClient, customClient);
+	}
+
+	@AfterEach
+	public void stopServers() {
+		servers.forEach(NanoHTTPD::stop);
+	}
+
+	@Test
+	public void testParallelQuery() {
+		// warm up the connections and the executor
+		filter.performQuery(new LinkedHashSet<>(Arrays.asList("Alice", "Notch@mojang")));
+
+		bothReceived = new CountDownLatch(2);
+		Map<String, UUID> result = filter.performQuery(new LinkedHashSet<>(Arrays.asList("notch@mojang", "Carol", "alice")));
+
+		// both requests were in flight at the same time
+		assertEquals(2, overlappingRequests.get());
+
+		assertEquals(Arrays.asList("Notch@mojang", "Alice"), new ArrayList<>(result.keySet()));
+		assertEquals(QueryUUIDsFilter.maskUUID(NOTCH), result.get("Notch@mojang"));
+		assertEquals(ALICE, result.get("Alice"));
+	}
+}
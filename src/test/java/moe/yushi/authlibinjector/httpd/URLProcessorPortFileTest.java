@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.httpd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.Config;
+import moe.yushi.authlibinjector.Config.FeatureOption;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+
+public class URLProcessorPortFileTest {
+
+	private Path portFile;
+
+	@BeforeEach
+	public void createFile() throws IOException {
+		portFile = Files.createTempFile("httpd-port", null);
+		Config.httpdPort = 0;
+		Config.httpdVirtualThreads = FeatureOption.DEFAULT;
+		Config.httpdNonBlocking = FeatureOption.DEFAULT;
+	}
+
+	@AfterEach
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(portFile);
+	}
+
+	private String startWithPortFile() {
+		URLProcessor processor = new URLProcessor(Collections.emptyList(), (domain, path) -> Optional.empty(), new UpstreamClient(5000, 5000, 4));
+		processor.setPortFile(portFile);
+		return processor.getTransformSeed();
+	}
+
+	private int readPortFile() throws IOException {
+		return Integer.parseInt(new String(Files.readAllBytes(portFile), UTF_8));
+	}
+
+	@Test
+	public void testReusePort() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"))) {
+			port = socket.getLocalPort();
+		}
+		Files.write(portFile, String.valueOf(port).getBytes(UTF_8));
+
+		assertTrue(startWithPortFile().contains("local=http://127.0.0.1:" + port + "\n"));
+		assertEquals(port, readPortFile());
+	}
+
+	@Test
+	public void testPortInUse() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"))) {
+			Files.write(portFile, String.valueOf(socket.getLocalPort()).getBytes(UTF_8));
+
+			// falls back to a random port, and remembers it for the next launch
+			String seed = startWithPortFile();
+			int port = readPortFile();
+			assertNotEquals(socket.getLocalPort(), port);
+			assertTrue(seed.contains("local=http://127.0.0.1:" + port + "\n"));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class HTTPSessionTest {
+
+	private static class Request {
+		String method;
+		String uri;
+		String queryParameterString;
+		IHTTPSession session;
+		String body;
+	}
+
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+	private final List<Request> requests = new ArrayList<>();
+
+	private HTTPSession newSession(String input) {
+		return new HTTPSession(new ByteArrayInputStream(input.getBytes(ISO_8859_1)), output, null);
+	}
+
+	private void execute(HTTPSession session) throws IOException {
+		session.execute(s -> {
+			Request request = new Request();
+			request.method = s.getMethod();
+			request.uri = s.getUri();
+			request.queryParameterString = s.getQueryParameterString();
+			request.session = s;
+			try {
+				InputStream in = s.getInputStream();
+				request.body = in == null ? null : new String(asBytes(in), UTF_8);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			requests.add(request);
+			return Response.newFixedLength(Status.OK, CONTENT_TYPE_TEXT, "ok");
+		});
+	}
+
+	@Test
+	public void testTypicalRequest() throws IOException {
+		execute(newSession("GET /https/sessionserver.mojang.com/session/minecraft/profile/853c80ef3c3749fdaa49938b674adae6?unsigned=false HTTP/1.1\r\n"
+				+ "User-Agent: Java/1.8.0_301\r\n"
+				+ "Host: localhost:25565\r\n"
+				+ "Accept: text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2\r\n"
+				+ "Connection: keep-alive\r\n"
+				+ "\r\n"));
+
+		assertEquals(1, requests.size());
+		Request request = requests.get(0);
+		assertSame("GET", request.method);
+		assertEquals("/https/sessionserver.mojang.com/session/minecraft/profile/853c80ef3c3749fdaa49938b674adae6", request.uri);
+		assertEquals("unsigned=false", request.queryParameterString);
+		assertEquals(Arrays.asList("false"), request.session.getParameters().get("unsigned"));
+		assertEquals(Arrays.asList("user-agent", "host", "accept", "connection"), new ArrayList<>(request.session.getHeaders().keySet()));
+		for (String name : request.session.getHeaders().keySet()) {
+			assertSame(name.intern(), name);
+		}
+		assertEquals("localhost:25565", request.session.getHeaders().get("host"));
+		assertEquals("text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2", request.session.getHeaders().get("accept"));
+		assertNull(request.body);
+		assertTrue(output.toString("ISO-8859-1").startsWith("HTTP/1.1 200 OK \r\n"));
+	}
+
+	@Test
+	public void testHeaderNames() throws IOException {
+		execute(newSession("POST /api HTTP/1.1\n"
+				+ "CONTENT-LENGTH:5\n"
+				+ "  X-Custom-Header  :  some value  \n"
+				+ "X-Empty:\n"
+				+ "no colon\n"
+				+ "\n"
+				+ "hello"));
+
+		Request request = requests.get(0);
+		assertSame("POST", request.method);
+		assertEquals("5", request.session.getHeaders().get("content-length"));
+		assertEquals("some value", request.session.getHeaders().get("x-custom-header"));
+		assertEquals("", request.session.getHeaders().get("x-empty"));
+		assertEquals(3, request.session.getHeaders().size());
+		assertEquals("hello", request.body);
+	}
+
+	@Test
+	public void testDecodeUri() throws IOException {
+		execute(newSession("GET /a%20b+c/%E4%BD%A0?q=%E4%BD%A0+x&q=2&flag HTTP/1.1\r\n\r\n"));
+
+		Request request = requests.get(0);
+		assertEquals("/a b c/\u4f60", request.uri);
+		assertEquals("q=%E4%BD%A0+x&q=2&flag", request.queryParameterString);
+		assertEquals(Arrays.asList("\u4f60 x", "2"), request.session.getParameters().get("q"));
+		assertEquals(Arrays.asList(""), request.session.getParameters().get("flag"));
+	}
+
+	@Test
+	public void testUnknownMethod() throws IOException {
+		// keep-alive is only assumed for HTTP/1.1
+		assertThrows(HTTPSession.ConnectionCloseException.class, () -> execute(newSession("PROPFIND  /dav \tHTTP/1.0\r\n\r\n")));
+
+		Request request = requests.get(0);
+		assertEquals("PROPFIND", request.method);
+		assertEquals("/dav", request.uri);
+		assertEquals(0, request.session.getHeaders().size());
+	}
+
+	@Test
+	public void testMissingProtocolVersion() throws IOException {
+		execute(newSession("GET /\r\n\r\n"));
+		assertEquals("/", requests.get(0).uri);
+	}
+
+	@Test
+	public void testMissingUri() throws IOException {
+		execute(newSession("GET\r\n\r\n"));
+		assertEquals(0, requests.size());
+		assertTrue(output.toString("ISO-8859-1").startsWith("HTTP/1.1 400 Bad Request \r\n"));
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		HTTPSession session = newSession(
+				"POST /first HTTP/1.1\r\nContent-Type: text/plain\r\nContent-Length: 3\r\n\r\nabc"
+						+ "GET /second HTTP/1.1\r\nHost: b\r\n\r\n");
+		execute(session);
+		execute(session);
+
+		assertEquals(2, requests.size());
+		assertEquals("/first", requests.get(0).uri);
+		assertEquals("abc", requests.get(0).body);
+		assertEquals("/second", requests.get(1).uri);
+		assertEquals("b", requests.get(1).session.getHeaders().get("host"));
+		assertNull(requests.get(1).session.getHeaders().get("content-type"));
+	}
+}
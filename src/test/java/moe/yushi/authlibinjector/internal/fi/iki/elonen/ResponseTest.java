@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.internal.fi.iki.elonen;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class ResponseTest {
+
+	private static byte[] randomBytes(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Sends the response, and returns the bytes after the header.
+	 */
+	private static byte[] sendAndGetBody(Response response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.send(out);
+		byte[] bytes = out.toByteArray();
+		int headerEnd = HTTPSession.findHeaderEnd(bytes, bytes.length);
+		assertTrue(headerEnd > 0);
+		byte[] body = new byte[bytes.length - headerEnd];
+		System.arraycopy(bytes, headerEnd, body, 0, body.length);
+		return body;
+	}
+
+	/**
+	 * Returns at most 1000 bytes per read, like a network stream.
+	 */
+	private static InputStream trickle(byte[] data) {
+		return new FilterInputStream(new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 1000));
+			}
+		};
+	}
+
+	@Test
+	public void testFixedLength() throws IOException {
+		byte[] data = randomBytes(300_000);
+		assertArrayEquals(data, sendAndGetBody(Response.newFixedLength(Status.OK, null, new ByteArrayInputStream(data), data.length)));
+	}
+
+	@Test
+	public void testFixedLengthTruncated() throws IOException {
+		byte[] data = randomBytes(100_000);
+		byte[] body = sendAndGetBody(Response.newFixedLength(Status.OK, null, new ByteArrayInputStream(data), 70_000));
+		assertEquals(70_000, body.length);
+	}
+
+	@Test
+	public void testChunked() throws IOException {
+		byte[] data = randomBytes(300_000);
+		byte[] body = sendAndGetBody(Response.newChunked(Status.OK, null, new ByteArrayInputStream(data)));
+		assertArrayEquals(data, asBytes(new ChunkedInputStream(new ByteArrayInputStream(body))));
+	}
+
+	@Test
+	public void testChunkedFraming() throws IOException {
+		byte[] body = sendAndGetBody(Response.newChunked(Status.OK, null, trickle("Wikipedia".getBytes(ISO_8859_1))));
+		assertEquals("9\r\nWikipedia\r\n0\r\n\r\n", new String(body, ISO_8859_1));
+
+		byte[] data = randomBytes(2500);
+		body = sendAndGetBody(Response.newChunked(Status.OK, null, trickle(data)));
+		assertTrue(new String(body, ISO_8859_1).startsWith("3e8\r\n"));
+		assertArrayEquals(data, asBytes(new ChunkedInputStream(new ByteArrayInputStream(body))));
+	}
+
+	@Test
+	public void testChunkedEmpty() throws IOException {
+		byte[] body = sendAndGetBody(Response.newChunked(Status.OK, null, new ByteArrayInputStream(new byte[0])));
+		assertEquals("0\r\n\r\n", new String(body, ISO_8859_1));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
+import static moe.yushi.authlibinjector.util.IOUtils.asString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.DefaultAsyncRunner;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IAsyncRunner;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.ThreadPerConnectionAsyncRunner;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.util.VirtualThreads;
+
+public class AsyncRunnerTest {
+
+	private NanoHTTPD httpd;
+	private final UpstreamClient client = new UpstreamClient(5000, 5000, 4);
+
+	private final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+	private void startServer(IAsyncRunner runner) throws IOException {
+		httpd = new NanoHTTPD("127.0.0.1", 0) {
+			@Override
+			public Response serve(IHTTPSession session) {
+				threadNames.add(Thread.currentThread().getName());
+				return Response.newFixedLength(Status.OK, CONTENT_TYPE_TEXT, "ok");
+			}
+		};
+		httpd.setAsyncRunner(runner);
+		httpd.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		if (httpd != null) {
+			httpd.stop();
+		}
+	}
+
+	private String get() throws IOException {
+		return asString(client.request("GET", "http://127.0.0.1:" + httpd.getListeningPort() + "/", null, null, null));
+	}
+
+	@Test
+	public void testUnboundedPool() throws IOException {
+		DefaultAsyncRunner runner = new DefaultAsyncRunner();
+		startServer(runner);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("ok", get());
+		}
+		assertEquals(0, runner.getRejectedConnections());
+		assertEquals(0, runner.getMaxThreads());
+	}
+
+	@Test
+	public void testSaturatedPool() throws Exception {
+		DefaultAsyncRunner runner = new DefaultAsyncRunner(1, 0);
+		startServer(runner);
+
+		try (Socket idle = new Socket("127.0.0.1", httpd.getListeningPort())) {
+			// the idle connection holds the only thread
+			waitFor(() -> runner.getActiveThreads() == 1);
+
+			try (Socket rejected = new Socket("127.0.0.1", httpd.getListeningPort())) {
+				rejected.setSoTimeout(3000);
+				rejected.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(UTF_8));
+				try (InputStream in = rejected.getInputStream()) {
+					assertEquals(-1, in.read());
+				} catch (IOException e) {
+					// connection reset
+				}
+			}
+			assertEquals(1, runner.getRejectedConnections());
+			assertEquals(1, runner.getOpenConnections());
+		}
+
+		waitFor(() -> runner.getOpenConnections() == 0);
+		assertEquals("ok", get());
+	}
+
+	@Test
+	public void testVirtualThreads() throws Exception {
+		Optional<ThreadFactory> factory = VirtualThreads.newThreadFactory("test-virtual-");
+		if (!factory.isPresent()) {
+			// requires Java 21+
+			return;
+		}
+		startServer(new ThreadPerConnectionAsyncRunner(factory.get()));
+
+		ExecutorService clients = Executors.newFixedThreadPool(32);
+		try {
+			List<Future<String>> responses = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				responses.add(clients.submit(this::get));
+			}
+			for (Future<String> response : responses) {
+				assertEquals("ok", response.get());
+			}
+		} finally {
+			clients.shutdown();
+		}
+		for (String threadName : threadNames) {
+			assertTrue(threadName.startsWith("test-virtual-"), threadName);
+		}
+		waitFor(() -> httpd.getAsyncRunner().getOpenConnections() == 0);
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("Timed out");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.ExpiringCache;
+
+public class ExpiringCacheTest {
+
+	@Test
+	public void testHitAndMiss() {
+		ExpiringCache<String, String> cache = new ExpiringCache<>(16, 1, 1, TimeUnit.MINUTES);
+		assertFalse(cache.get("a").isPresent());
+		cache.put("a", "1");
+		assertEquals(Optional.of("1"), cache.get("a").get().getValue());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.invalidate("a");
+		assertFalse(cache.get("a").isPresent());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testNegativeEntry() {
+		ExpiringCache<String, String> cache = new ExpiringCache<>(16, 1, 1, TimeUnit.MINUTES);
+		cache.put("a", null);
+		Optional<ExpiringCache.Entry<String>> entry = cache.get("a");
+		assertTrue(entry.isPresent());
+		assertFalse(entry.get().getValue().isPresent());
+		assertEquals(1, cache.getNegativeHits());
+		assertEquals(0, cache.getHits());
+
+		ExpiringCache<String, String> noNegative = new ExpiringCache<>(16, 1, 0, TimeUnit.MINUTES);
+		noNegative.put("a", null);
+		assertEquals(0, noNegative.size());
+	}
+
+	@Test
+	public void testExpiry() {
+		AtomicLong clock = new AtomicLong();
+		ExpiringCache<String, String> cache = new ExpiringCache<>(16, 50, 50, 0, 0, TimeUnit.MILLISECONDS, clock::get);
+		cache.put("a", "1");
+		cache.put("b", null);
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(49));
+		assertTrue(cache.get("a").isPresent());
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		assertFalse(cache.get("a").isPresent());
+		assertFalse(cache.get("b").isPresent());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStaleEntries() {
+		AtomicLong clock = new AtomicLong();
+		ExpiringCache<String, String> cache = new ExpiringCache<>(16, 50, 50, 300, 2000, TimeUnit.MILLISECONDS, clock::get);
+		cache.put("a", "1");
+		assertFalse(cache.get("a").get().isStale());
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		// stale while revalidate
+		Optional<ExpiringCache.Entry<String>> entry = cache.get("a");
+		assertTrue(entry.get().isStale());
+		assertEquals(Optional.of("1"), entry.get().getValue());
+		assertEquals(1, cache.getStaleHits());
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+
+		// stale if error
+		assertFalse(cache.get("a").isPresent());
+		assertEquals(Optional.of("1"), cache.getStaleIfError("a").get().getValue());
+		assertEquals(1, cache.getStaleIfErrorHits());
+
+		// refreshed
+		cache.put("a", "2");
+		assertEquals(Optional.of("2"), cache.get("a").get().getValue());
+		assertFalse(cache.get("a").get().isStale());
+
+		// dropped after both windows
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(2050));
+		assertFalse(cache.getStaleIfError("a").isPresent());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		ExpiringCache<String, String> cache = new ExpiringCache<>(3, 1, 1, TimeUnit.MINUTES);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.put("c", "3");
+		cache.get("a"); // b is now the least recently used
+		cache.put("d", "4");
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.get("a").isPresent());
+		assertFalse(cache.get("b").isPresent());
+		assertTrue(cache.get("c").isPresent());
+		assertTrue(cache.get("d").isPresent());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(256, 1, 1, TimeUnit.MINUTES);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int offset = t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					int key = (i * 8 + offset) % 1024;
+					Optional<ExpiringCache.Entry<Integer>> entry = cache.get(key);
+					if (entry.isPresent()) {
+						assertEquals(Optional.of(key), entry.get().getValue());
+					} else {
+						cache.put(key, key);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(cache.size() <= 256);
+		assertEquals(8 * 10000, cache.getHits() + cache.getMisses());
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	private static void assertWithinError(long expected, long actual) {
+		assertTrue(Math.abs(expected - actual) <= expected / 32, "expected " + expected + " got " + actual);
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getValueAtQuantile(0.99));
+		assertEquals(0, snapshot.getMax());
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 60; i++) {
+			histogram.record(i);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(60, snapshot.getCount());
+		assertEquals(30, snapshot.getValueAtQuantile(0.5));
+		assertEquals(60, snapshot.getValueAtQuantile(1));
+		assertEquals(1830, snapshot.getSum());
+	}
+
+	@Test
+	public void testQuantiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 100000; i++) {
+			histogram.record(i * 1000);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100000, snapshot.getCount());
+		assertWithinError(50_000_000, snapshot.getValueAtQuantile(0.5));
+		assertWithinError(90_000_000, snapshot.getValueAtQuantile(0.9));
+		assertWithinError(99_000_000, snapshot.getValueAtQuantile(0.99));
+		assertEquals(100_000_000, snapshot.getMax());
+		assertEquals(100_000_000, snapshot.getValueAtQuantile(1));
+	}
+
+	@Test
+	public void testOverflow() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.record(Long.MAX_VALUE);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(Long.MAX_VALUE, snapshot.getMax());
+		assertEquals(Long.MAX_VALUE, snapshot.getValueAtQuantile(0.99));
+		assertWithinError(1000, snapshot.getValueAtQuantile(0.5));
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMax());
+		assertEquals(0, snapshot.getSum());
+	}
+}
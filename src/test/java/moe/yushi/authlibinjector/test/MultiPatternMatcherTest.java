@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
+
+public class MultiPatternMatcherTest {
+
+	private final MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+			"api.mojang.com",
+			"authserver.mojang.com",
+			"sessionserver.mojang.com",
+			"skins.minecraft.net",
+			"api.minecraftservices.com"));
+
+	@Test
+	public void testMatch() {
+		assertTrue(matcher.matches("https://api.mojang.com/profiles/minecraft"));
+		assertTrue(matcher.matches("https://sessionserver.mojang.com/session/minecraft/profile/"));
+		assertTrue(matcher.matches("http://skins.minecraft.net"));
+		assertTrue(matcher.matches("api.minecraftservices.com"));
+	}
+
+	@Test
+	public void testNoMatch() {
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches("https://example.com/"));
+		assertFalse(matcher.matches("https://api.mojang.co/"));
+		assertFalse(matcher.matches("https://session.mojang.com/"));
+	}
+
+	@Test
+	public void testOverlapping() {
+		// "api.mojang.com" must be found after the automaton failed on "authserver.mojang.co"
+		assertTrue(matcher.matches("authserver.mojang.coapi.mojang.com"));
+		assertTrue(new MultiPatternMatcher(Arrays.asList("abcd", "bc")).matches("abc"));
+		assertTrue(new MultiPatternMatcher(Arrays.asList("aab")).matches("aaab"));
+	}
+
+	@Test
+	public void testNonAscii() {
+		assertTrue(matcher.matches("\u4e2dhttps://api.mojang.com/"));
+		assertFalse(matcher.matches("https://api.mo\u4e2djang.com/"));
+
+		byte[] bytes = "\u00e9https://api.mojang.com/\u00e9".getBytes(UTF_8);
+		assertTrue(matcher.matches(bytes, 0, bytes.length));
+		assertFalse(matcher.matches(bytes, 0, 10));
+	}
+
+	@Test
+	public void testInvalidPattern() {
+		assertThrows(IllegalArgumentException.class, () -> new MultiPatternMatcher(Collections.singleton("")));
+		assertThrows(IllegalArgumentException.class, () -> new MultiPatternMatcher(Collections.singleton("\u4e2d.com")));
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static moe.yushi.authlibinjector.util.IOUtils.asString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+
+public class NonBlockingHttpdTest {
+
+	private NanoHTTPD httpd;
+	private final UpstreamClient client = new UpstreamClient(5000, 5000, 4);
+	private final List<IHTTPSession> sessions = Collections.synchronizedList(new ArrayList<>());
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		httpd = new NanoHTTPD("127.0.0.1", 0) {
+			@Override
+			public Response serve(IHTTPSession session) {
+				sessions.add(session);
+				String body = "";
+				try {
+					InputStream in = session.getInputStream();
+					if (in != null) {
+						body = new String(asBytes(in), UTF_8);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return Response.newFixedLength(Status.OK, CONTENT_TYPE_TEXT, session.getUri() + body);
+			}
+		};
+		httpd.setNonBlocking(true);
+		httpd.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		httpd.stop();
+	}
+
+	private String request(String method, String uri, String body) throws IOException {
+		String url = "http://127.0.0.1:" + httpd.getListeningPort() + uri;
+		byte[] response = body == null ? client.request(method, url, null, null, null) : client.request(method, url, body.getBytes(UTF_8), CONTENT_TYPE_TEXT, null);
+		return asString(response);
+	}
+
+	/**
+	 * Reads a response with a Content-Length, and returns its body.
+	 */
+	private static String readResponse(InputStream in) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		while (!header.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+			int b = in.read();
+			if (b == -1) {
+				throw new IOException("Unexpected EOF");
+			}
+			header.write(b);
+		}
+		int contentLength = -1;
+		for (String line : header.toString("ISO-8859-1").split("\r\n")) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		byte[] body = new byte[contentLength];
+		int read = 0;
+		while (read < contentLength) {
+			int n = in.read(body, read, contentLength - read);
+			if (n == -1) {
+				throw new IOException("Unexpected EOF");
+			}
+			read += n;
+		}
+		return new String(body, UTF_8);
+	}
+
+	@Test
+	public void testRequests() throws IOException {
+		assertEquals("/a", request("GET", "/a", null));
+		assertEquals("/b" + "hello", request("POST", "/b", "hello"));
+		assertEquals("/c", request("GET", "/c", null));
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", httpd.getListeningPort())) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+
+			out.write("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(UTF_8));
+			assertEquals("/first", readResponse(in));
+
+			// the idle connection doesn't hold a thread
+			waitFor(() -> httpd.getParkedConnections() == 1 && httpd.getAsyncRunner().getOpenConnections() == 0);
+
+			// a request header split across several packets
+			out.write("GET /sec".getBytes(UTF_8));
+			out.flush();
+			Thread.sleep(50);
+			out.write("ond HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(UTF_8));
+			assertEquals("/second", readResponse(in));
+
+			out.write("POST /third HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc".getBytes(UTF_8));
+			assertEquals("/thirdabc", readResponse(in));
+
+			// the session is reused across parks
+			assertEquals(3, sessions.size());
+			assertSame(sessions.get(0), sessions.get(1));
+			assertSame(sessions.get(0), sessions.get(2));
+		}
+	}
+
+	@Test
+	public void testPipelining() throws IOException {
+		try (Socket socket = new Socket("127.0.0.1", httpd.getListeningPort())) {
+			socket.setSoTimeout(5000);
+			socket.getOutputStream().write((
+					"GET /1 HTTP/1.1\r\n\r\n"
+							+ "POST /2 HTTP/1.1\r\nContent-Length: 1\r\n\r\nx"
+							+ "GET /3 HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes(UTF_8));
+			InputStream in = socket.getInputStream();
+			assertEquals("/1", readResponse(in));
+			assertEquals("/2x", readResponse(in));
+			assertEquals("/3", readResponse(in));
+			assertEquals(-1, in.read());
+		}
+	}
+
+	@Test
+	public void testManyIdleConnections() throws Exception {
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int i = 0; i < 50; i++) {
+				sockets.add(new Socket("127.0.0.1", httpd.getListeningPort()));
+			}
+			waitFor(() -> httpd.getParkedConnections() == 50);
+			assertEquals(0, httpd.getAsyncRunner().getOpenConnections());
+			assertEquals("/ok", request("GET", "/ok", null));
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		waitFor(() -> httpd.getParkedConnections() <= 1);
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("Timed out");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static java.util.Collections.singleton;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.RequestBatcher;
+
+public class RequestBatcherTest {
+
+	private final List<Set<String>> requests = new CopyOnWriteArrayList<>();
+
+	private Set<String> load(Set<String> keys) {
+		requests.add(keys);
+		return new LinkedHashSet<>(keys);
+	}
+
+	private List<Set<String>> executeConcurrently(RequestBatcher<String, Set<String>> batcher, String... keys) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(keys.length);
+		try {
+			List<Future<Set<String>>> futures = new ArrayList<>();
+			for (String key : keys) {
+				futures.add(pool.submit(() -> batcher.execute(singleton(key))));
+			}
+			List<Set<String>> results = new ArrayList<>();
+			for (Future<Set<String>> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		RequestBatcher<String, Set<String>> batcher = new RequestBatcher<>(this::load, 500, TimeUnit.MILLISECONDS, 10);
+		List<Set<String>> results = executeConcurrently(batcher, "a", "b", "c", "d");
+
+		assertEquals(1, requests.size());
+		assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), new HashSet<>(requests.get(0)));
+		for (Set<String> result : results) {
+			assertEquals(requests.get(0), result);
+		}
+		assertEquals(1, batcher.getBatches());
+		assertEquals(3, batcher.getBatchedRequests());
+	}
+
+	@Test
+	public void testFullBatchIsSentEarly() throws Exception {
+		RequestBatcher<String, Set<String>> batcher = new RequestBatcher<>(this::load, 30, TimeUnit.SECONDS, 3);
+		long t0 = System.nanoTime();
+		executeConcurrently(batcher, "a", "b", "c");
+		assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(10));
+		assertEquals(1, requests.size());
+		assertEquals(3, requests.get(0).size());
+	}
+
+	@Test
+	public void testLargeRequestIsNotBatched() {
+		RequestBatcher<String, Set<String>> batcher = new RequestBatcher<>(this::load, 30, TimeUnit.SECONDS, 2);
+		Set<String> keys = new LinkedHashSet<>(Arrays.asList("a", "b"));
+		assertEquals(keys, batcher.execute(keys));
+		assertEquals(0, batcher.getBatches());
+	}
+
+	@Test
+	public void testSharedException() throws Exception {
+		RequestBatcher<String, Set<String>> batcher = new RequestBatcher<>(keys -> {
+			throw new UncheckedIOException(new IOException("upstream failed"));
+		}, 500, TimeUnit.MILLISECONDS, 10);
+		Exception e = assertThrows(Exception.class, () -> executeConcurrently(batcher, "a", "b"));
+		assertTrue(e.getCause() instanceof UncheckedIOException);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.util.SingleFlight;
+
+public class SingleFlightTest {
+
+	private static void awaitInFlight(SingleFlight<?, ?> flights, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (flights.getInFlight() != expected) {
+			assertTrue(System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<>();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch unblock = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			Future<String> leader = pool.submit(() -> flights.execute("key", () -> {
+				calls.incrementAndGet();
+				try {
+					unblock.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				return "value";
+			}));
+			awaitInFlight(flights, 1);
+
+			List<Future<String>> followers = new ArrayList<>();
+			for (int i = 0; i < 7; i++) {
+				followers.add(pool.submit(() -> flights.execute("key", () -> {
+					calls.incrementAndGet();
+					return "other";
+				})));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (flights.getCoalesced() != 7) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+			unblock.countDown();
+
+			assertEquals("value", leader.get());
+			for (Future<String> follower : followers) {
+				assertEquals("value", follower.get());
+			}
+			assertEquals(1, calls.get());
+			assertEquals(0, flights.getInFlight());
+
+			// nothing is kept after the call completes
+			assertEquals("next", flights.execute("key", () -> "next"));
+		} finally {
+			unblock.countDown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testDifferentKeys() {
+		SingleFlight<String, String> flights = new SingleFlight<>();
+		assertEquals("a", flights.execute("a", () -> flights.execute("b", () -> "b").replace('b', 'a')));
+		assertEquals(0, flights.getCoalesced());
+	}
+
+	@Test
+	public void testSharedException() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<>();
+		UncheckedIOException failure = new UncheckedIOException(new IOException("upstream failed"));
+		CountDownLatch unblock = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> leader = pool.submit(() -> flights.execute("key", () -> {
+				try {
+					unblock.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				throw failure;
+			}));
+			awaitInFlight(flights, 1);
+			Future<UncheckedIOException> follower = pool.submit(() -> assertThrows(UncheckedIOException.class, () -> flights.execute("key", () -> "value")));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (flights.getCoalesced() != 1) {
+				assertTrue(System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+			unblock.countDown();
+
+			assertSame(failure, follower.get());
+			assertThrows(Exception.class, leader::get);
+			assertEquals(0, flights.getInFlight());
+		} finally {
+			unblock.countDown();
+			pool.shutdown();
+		}
+	}
+}
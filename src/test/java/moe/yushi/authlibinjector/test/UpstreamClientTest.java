@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_TEXT;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.util.UpstreamException;
+
+public class UpstreamClientTest {
+
+	private NanoHTTPD server;
+	private final CountDownLatch unblock = new CountDownLatch(1);
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		server = new NanoHTTPD("127.0.0.1", 0) {
+			@Override
+			public Response serve(IHTTPSession session) {
+				switch (session.getUri()) {
+					case "/slow":
+						try {
+							unblock.await(10, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return Response.newFixedLength(Status.OK, CONTENT_TYPE_TEXT, "slow");
+					case "/missing":
+						return Response.newFixedLength(Status.NOT_FOUND, CONTENT_TYPE_TEXT, "not found");
+					default:
+						return Response.newFixedLength(Status.OK, CONTENT_TYPE_TEXT, session.getMethod() + " " + session.getUri());
+				}
+			}
+		};
+		server.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		unblock.countDown();
+		server.stop();
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getListeningPort() + path;
+	}
+
+	private static UpstreamClient.Route getOnlyRoute(UpstreamClient client) {
+		assertEquals(1, client.getRoutes().size());
+		return client.getRoutes().iterator().next();
+	}
+
+	@Test
+	public void testRequest() throws IOException {
+		UpstreamClient client = new UpstreamClient(5000, 5000, 4);
+		assertEquals("GET /a", new String(client.request("GET", url("/a"), null, null, null), UTF_8));
+		assertEquals("POST /b", new String(client.request("POST", url("/b"), "{}".getBytes(UTF_8), "application/json", null), UTF_8));
+		assertEquals(404, assertThrows(UpstreamException.class, () -> client.request("GET", url("/missing"), null, null, null)).getStatus());
+
+		UpstreamClient.Route route = getOnlyRoute(client);
+		assertEquals("http://127.0.0.1:" + server.getListeningPort(), route.getName());
+		assertEquals(3, route.getRequests());
+		assertEquals(0, route.getActiveConnections());
+		assertEquals(0, route.getRejectedRequests());
+	}
+
+	@Test
+	public void testReadTimeout() {
+		UpstreamClient client = new UpstreamClient(5000, 200, 4);
+		long t0 = System.nanoTime();
+		UpstreamException e = assertThrows(UpstreamException.class, () -> client.request("GET", url("/slow"), null, null, null));
+		assertTrue(e.isTimeout());
+		assertTrue(e.getCause() instanceof SocketTimeoutException);
+		assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(5));
+
+		UpstreamClient.Route route = getOnlyRoute(client);
+		assertEquals(1, route.getTimeouts());
+		assertEquals(0, route.getActiveConnections());
+	}
+
+	@Test
+	public void testMaxConnectionsPerRoute() throws IOException {
+		UpstreamClient client = new UpstreamClient(200, 5000, 1);
+		UpstreamClient.Exchange exchange = client.open("GET", url("/held"), null);
+		InputStream body = exchange.getResponseBody();
+		UpstreamClient.Route route = exchange.getRoute();
+		assertEquals(1, route.getActiveConnections());
+
+		// the only slot is held by the exchange above
+		assertTrue(assertThrows(UpstreamException.class, () -> client.request("GET", url("/a"), null, null, null)).isTimeout());
+		assertEquals(1, route.getRejectedRequests());
+
+		// closing the body releases the slot
+		assertEquals("GET /held", new String(asBytes(body), UTF_8));
+		body.close();
+		assertEquals(0, route.getActiveConnections());
+		assertEquals("GET /a", new String(client.request("GET", url("/a"), null, null, null), UTF_8));
+		assertEquals(3, route.getRequests());
+	}
+
+	@Test
+	public void testWaitForConnection() throws Exception {
+		UpstreamClient client = new UpstreamClient(5000, 5000, 1);
+		UpstreamClient.Exchange exchange = client.open("GET", url("/held"), null);
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		releaser.start();
+		assertEquals("GET /a", new String(client.request("GET", url("/a"), null, null, null), UTF_8));
+		releaser.join();
+		assertEquals(0, exchange.getRoute().getRejectedRequests());
+	}
+
+	@Test
+	public void testExecutorSaturation() throws Exception {
+		UpstreamClient client = new UpstreamClient(5000, 5000, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		int tasks = 64;
+		CountDownLatch done = new CountDownLatch(tasks);
+		for (int i = 0; i < tasks; i++) {
+			// more blocked tasks than the pool can hold, the extra ones run on this thread
+			client.getExecutor().execute(() -> {
+				if (!Thread.currentThread().getName().startsWith("authlib-injector upstream")) {
+					release.countDown();
+				}
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testHttp2Transport() throws IOException {
+		UpstreamClient client = new UpstreamClient(5000, 200, 4, true);
+		if (!client.isHttp2()) {
+			// java.net.http is not available
+			return;
+		}
+		assertEquals("GET /a", new String(client.request("GET", url("/a"), null, null, null), UTF_8));
+		assertEquals("POST /b", new String(client.request("POST", url("/b"), "{}".getBytes(UTF_8), "application/json", null), UTF_8));
+		assertEquals(404, assertThrows(UpstreamException.class, () -> client.request("GET", url("/missing"), null, null, null)).getStatus());
+		assertTrue(assertThrows(UpstreamException.class, () -> client.request("GET", url("/slow"), null, null, null)).isTimeout());
+
+		UpstreamClient.Route route = getOnlyRoute(client);
+		assertEquals(4, route.getRequests());
+		// the test server only speaks HTTP/1.1
+		assertEquals(0, route.getHttp2Requests());
+		assertEquals(1, route.getTimeouts());
+		assertEquals(0, route.getActiveConnections());
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.test;
+
+import static moe.yushi.authlibinjector.util.IOUtils.CONTENT_TYPE_JSON;
+import static moe.yushi.authlibinjector.util.IOUtils.asBytes;
+import static moe.yushi.authlibinjector.util.IOUtils.asString;
+import static moe.yushi.authlibinjector.util.JsonUtils.asJsonArray;
+import static moe.yushi.authlibinjector.util.JsonUtils.asJsonString;
+import static moe.yushi.authlibinjector.util.JsonUtils.parseJson;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.IHTTPSession;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.NanoHTTPD;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Response;
+import moe.yushi.authlibinjector.internal.fi.iki.elonen.Status;
+import moe.yushi.authlibinjector.util.UUIDUtils;
+import moe.yushi.authlibinjector.util.UpstreamClient;
+import moe.yushi.authlibinjector.yggdrasil.GameProfile;
+import moe.yushi.authlibinjector.yggdrasil.PersistentLookupCache;
+import moe.yushi.authlibinjector.yggdrasil.YggdrasilAPIProvider;
+import moe.yushi.authlibinjector.yggdrasil.YggdrasilClient;
+
+public class YggdrasilClientCacheTest {
+
+	private static final UUID ALICE = UUID.fromString("00000000-0000-0000-0000-000000000001");
+	private static final UUID BOB = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+	private NanoHTTPD server;
+	private final Map<String, UUID> players = new LinkedHashMap<>();
+	private final List<List<String>> uuidQueries = new CopyOnWriteArrayList<>();
+	private final List<String> profileQueries = new CopyOnWriteArrayList<>();
+	private YggdrasilClient client;
+	private final AtomicLong clock = new AtomicLong();
+	private volatile /* nullable */ Status failure;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		players.put("Alice", ALICE);
+		players.put("Bob", BOB);
+		server = new NanoHTTPD("127.0.0.1", 0) {
+			@Override
+			public Response serve(IHTTPSession session) {
+				if (failure != null) {
+					return Response.newFixedLength(failure, null, null);
+				}
+				try {
+					if (session.getUri().equals("/profiles")) {
+						return queryUUIDs(session);
+					} else {
+						return queryProfile(session.getUri().substring("/profile/".length()));
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+		server.start();
+
+		client = newClient();
+	}
+
+	private YggdrasilClient newClient() {
+		String base = "http://127.0.0.1:" + server.getListeningPort();
+		YggdrasilClient client = new YggdrasilClient(new YggdrasilAPIProvider() {
+			@Override
+			public String queryUUIDsByNames() {
+				return base + "/profiles";
+			}
+
+			@Override
+			public String queryProfile(UUID uuid) {
+				return base + "/profile/" + UUIDUtils.toUnsignedUUID(uuid);
+			}
+
+			@Override
+			public String toString() {
+				return base;
+			}
+		}, new UpstreamClient(5000, 5000, 4));
+		client.setCacheClock(clock::get);
+		return client;
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop();
+	}
+
+	private Response queryUUIDs(IHTTPSession session) throws IOException {
+		List<String> names = new ArrayList<>();
+		asJsonArray(parseJson(asString(asBytes(session.getInputStream()))))
+				.forEach(element -> names.add(asJsonString(element)));
+		uuidQueries.add(names);
+		StringBuilder sb = new StringBuilder("[");
+		for (String name : names) {
+			players.forEach((player, uuid) -> {
+				if (player.equalsIgnoreCase(name)) {
+					if (sb.length() > 1) {
+						sb.append(',');
+					}
+					sb.append("{\"id\":\"").append(UUIDUtils.toUnsignedUUID(uuid)).append("\",\"name\":\"").append(player).append("\"}");
+				}
+			});
+		}
+		return Response.newFixedLength(Status.OK, CONTENT_TYPE_JSON, sb.append(']').toString());
+	}
+
+	private Response queryProfile(String unsignedUUID) {
+		profileQueries.add(unsignedUUID);
+		for (Map.Entry<String, UUID> player : players.entrySet()) {
+			if (UUIDUtils.toUnsignedUUID(player.getValue()).equals(unsignedUUID)) {
+				return Response.newFixedLength(Status.OK, CONTENT_TYPE_JSON,
+						"{\"id\":\"" + unsignedUUID + "\",\"name\":\"" + player.getKey() + "\",\"properties\":[{\"name\":\"textures\",\"value\":\"e30=\"}]}");
+			}
+		}
+		return Response.newFixedLength(Status.NO_CONTENT, null, null);
+	}
+
+	private static LinkedHashSet<String> names(String... names) {
+		return new LinkedHashSet<>(Arrays.asList(names));
+	}
+
+	@Test
+	public void testUUIDCache() {
+		client.enableUUIDCache(16, 60000, 60000);
+
+		Map<String, UUID> expected = new LinkedHashMap<>();
+		expected.put("Alice", ALICE);
+		assertEquals(expected, client.queryUUIDs(names("alice", "Carol")));
+		assertEquals(Arrays.asList("alice", "Carol"), uuidQueries.get(0));
+
+		// only Bob is unknown to the cache, and the result follows the order of the request
+		Map<String, UUID> result = client.queryUUIDs(names("Bob", "ALICE", "carol"));
+		assertEquals(Arrays.asList("Bob"), uuidQueries.get(1));
+		assertEquals(Arrays.asList("Bob", "Alice"), new ArrayList<>(result.keySet()));
+		assertEquals(BOB, result.get("Bob"));
+
+		assertEquals(Collections.emptyMap(), client.queryUUIDs(names("CAROL")));
+		assertEquals(2, uuidQueries.size());
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		client.enableProfileCache(16, 50, 50, 60000, 0);
+		client.enableUUIDCache(16, 50, 50, 60000, 0);
+		client.queryProfile(ALICE, false);
+		client.queryUUIDs(names("Alice"));
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		// the stale entries are served, and refreshed in the background
+		assertEquals("Alice", client.queryProfile(ALICE, false).get().name);
+		assertEquals(ALICE, client.queryUUIDs(names("alice")).get("Alice"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (profileQueries.size() < 2 || uuidQueries.size() < 2) {
+			assertTrue(System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+		assertEquals(Arrays.asList("alice"), uuidQueries.get(1));
+	}
+
+	@Test
+	public void testStaleIfError() throws Exception {
+		client.enableProfileCache(16, 50, 50, 0, 60000);
+		client.enableUUIDCache(16, 50, 50, 0, 60000);
+		client.queryProfile(ALICE, false);
+		client.queryUUIDs(names("Alice"));
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		failure = Status.SERVICE_UNAVAILABLE;
+		assertEquals("Alice", client.queryProfile(ALICE, false).get().name);
+		assertEquals(ALICE, client.queryUUIDs(names("Alice")).get("Alice"));
+		assertEquals(2, profileQueries.size() + uuidQueries.size());
+
+		// nothing to fall back to
+		assertThrows(UncheckedIOException.class, () -> client.queryProfile(BOB, false));
+		assertThrows(UncheckedIOException.class, () -> client.queryUUIDs(names("Alice", "Bob")));
+	}
+
+	@Test
+	public void testNoStaleOnClientError() throws Exception {
+		client.enableProfileCache(16, 50, 50, 0, 60000);
+		client.enableUUIDCache(16, 50, 50, 0, 60000);
+		client.queryProfile(ALICE, false);
+		client.queryUUIDs(names("Alice"));
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		// a 4xx status is an answer from the server, not an outage
+		failure = Status.FORBIDDEN;
+		assertThrows(UncheckedIOException.class, () -> client.queryProfile(ALICE, false));
+		assertThrows(UncheckedIOException.class, () -> client.queryUUIDs(names("Alice")));
+	}
+
+	@Test
+	public void testStaleIfUnreachable() throws Exception {
+		client.enableProfileCache(16, 50, 50, 0, 60000);
+		client.queryProfile(ALICE, false);
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		server.stop();
+		assertEquals("Alice", client.queryProfile(ALICE, false).get().name);
+	}
+
+	@Test
+	public void testPersistentCache() throws IOException {
+		Path file = Files.createTempDirectory("authlib-injector-test").resolve("lookupcache");
+		try {
+			client.enableProfileCache(16, 60000, 60000);
+			client.enableUUIDCache(16, 60000, 60000);
+			PersistentLookupCache persistentCache = new PersistentLookupCache(file, 0);
+			client.setPersistentCache(persistentCache);
+			client.queryUUIDs(names("alice", "Carol"));
+			client.queryProfile(ALICE, true);
+			persistentCache.close();
+
+			// after a restart
+			YggdrasilClient restarted = newClient();
+			restarted.enableProfileCache(16, 60000, 60000);
+			restarted.enableUUIDCache(16, 60000, 60000);
+			restarted.setPersistentCache(new PersistentLookupCache(file, 0));
+			assertEquals(Collections.singletonMap("Alice", ALICE), restarted.queryUUIDs(names("ALICE", "carol")));
+			GameProfile profile = restarted.queryProfile(ALICE, true).get();
+			assertEquals(ALICE, profile.id);
+			assertEquals("e30=", profile.properties.get("textures").value);
+			assertEquals(1, uuidQueries.size());
+			assertEquals(1, profileQueries.size());
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".lock"));
+			Files.delete(file.getParent());
+		}
+	}
+
+	@Test
+	public void testUUIDBatching() throws Exception {
+		client.enableUUIDBatching(500, 10);
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			Future<Optional<UUID>> alice = pool.submit(() -> client.queryUUID("Alice"));
+			Future<Optional<UUID>> bob = pool.submit(() -> client.queryUUID("Bob"));
+			Future<Optional<UUID>> carol = pool.submit(() -> client.queryUUID("Carol"));
+			assertEquals(Optional.of(ALICE), alice.get());
+			assertEquals(Optional.of(BOB), bob.get());
+			assertEquals(Optional.empty(), carol.get());
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, uuidQueries.size());
+		assertEquals(3, uuidQueries.get(0).size());
+	}
+
+	@Test
+	public void testUUIDBatchingIgnoresCase() throws Exception {
+		client.enableUUIDBatching(500, 10);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<Map<String, UUID>> first = pool.submit(() -> client.queryUUIDs(names("Alice", "Bob")));
+			Future<Map<String, UUID>> second = pool.submit(() -> client.queryUUIDs(names("alice")));
+			assertEquals(ALICE, first.get().get("Alice"));
+			assertEquals(BOB, first.get().get("Bob"));
+			assertEquals(Collections.singletonMap("Alice", ALICE), second.get());
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, uuidQueries.size());
+		assertEquals(Arrays.asList("alice", "bob"), uuidQueries.get(0));
+	}
+
+	@Test
+	public void testProfileCache() {
+		client.enableProfileCache(16, 60000, 60000);
+
+		GameProfile profile = client.queryProfile(ALICE, false).get();
+		assertEquals("Alice", profile.name);
+		profile.name = "modified";
+		profile.properties.clear();
+
+		GameProfile cached = client.queryProfile(ALICE, false).get();
+		assertEquals("Alice", cached.name);
+		assertEquals("e30=", cached.properties.get("textures").value);
+		assertEquals(1, profileQueries.size());
+
+		// the signed profile is a different entry
+		client.queryProfile(ALICE, true);
+		assertEquals(2, profileQueries.size());
+
+		UUID unknown = UUID.fromString("00000000-0000-0000-0000-000000000003");
+		assertFalse(client.queryProfile(unknown, false).isPresent());
+		assertFalse(client.queryProfile(unknown, false).isPresent());
+		assertEquals(3, profileQueries.size());
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASM9;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.V1_5;
+import static org.objectweb.asm.Opcodes.V1_6;
+import static org.objectweb.asm.Opcodes.V1_8;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+public class CallbackInjectionTest {
+
+	@CallbackMethod
+	public static String callback() {
+		return "called";
+	}
+
+	private static byte[] createClass(int version) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(version, ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		for (String name : new String[] { "run1", "run2" }) {
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, name, "()Ljava/lang/String;", null, null);
+			mv.visitCode();
+			mv.visitLdcInsn("bar");
+			mv.visitInsn(POP);
+			mv.visitLdcInsn("foo");
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(-1, -1);
+			mv.visitEnd();
+		}
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	// replaces every "foo" constant with a call to callback()
+	private static class CallbackUnit implements TransformUnit {
+		@Override
+		public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+			return Optional.of(new ClassVisitor(ASM9, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+						@Override
+						public void visitLdcInsn(Object value) {
+							if ("foo".equals(value)) {
+								ctx.invokeCallback(mv, CallbackInjectionTest.class, "callback");
+								ctx.markModified();
+							} else {
+								super.visitLdcInsn(value);
+							}
+						}
+					};
+				}
+			});
+		}
+	}
+
+	// emits a callback into a discarded visitor, and never marks the class as modified
+	private static class SpeculativeCallbackUnit implements TransformUnit {
+		@Override
+		public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+			return Optional.of(new ClassVisitor(ASM9, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					ctx.invokeCallback(new MethodVisitor(ASM9) {}, CallbackInjectionTest.class, "callback");
+					return super.visitMethod(access, name, descriptor, signature, exceptions);
+				}
+			});
+		}
+	}
+
+	// replaces every "bar" constant with "baz"
+	private static class ConstantUnit implements TransformUnit {
+		@Override
+		public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+			return Optional.of(new ClassVisitor(ASM9, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+						@Override
+						public void visitLdcInsn(Object value) {
+							if ("bar".equals(value)) {
+								ctx.markModified();
+								super.visitLdcInsn("baz");
+							} else {
+								super.visitLdcInsn(value);
+							}
+						}
+					};
+				}
+			});
+		}
+	}
+
+	private static class TestClassLoader extends ClassLoader {
+		TestClassLoader() {
+			super(CallbackInjectionTest.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classfile) {
+			return defineClass("test.Example", classfile, 0, classfile.length);
+		}
+	}
+
+	private static List<String> getMethodNames(byte[] classfile) {
+		List<String> names = new ArrayList<>();
+		new ClassReader(classfile).accept(new ClassVisitor(ASM9) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				names.add(name);
+				return null;
+			}
+		}, 0);
+		return names;
+	}
+
+	private static byte[] transform(byte[] classfile) throws Exception {
+		return transform(classfile, new CallbackUnit());
+	}
+
+	private static byte[] transform(byte[] classfile, TransformUnit... units) throws Exception {
+		ClassTransformer transformer = new ClassTransformer();
+		for (TransformUnit unit : units) {
+			transformer.units.add(unit);
+		}
+		byte[] result = transformer.transform(null, "test/Example", null, null, classfile);
+		assertNotNull(result);
+		return result;
+	}
+
+	private static int getMajorVersion(byte[] classfile) {
+		return new ClassReader(classfile).readUnsignedShort(6);
+	}
+
+	@Test
+	public void testInvokeDynamic() throws Exception {
+		byte[] result = transform(createClass(V1_8));
+		assertEquals(52, getMajorVersion(result));
+		assertEquals(3, getMethodNames(result).size()); // run1, run2, metafactory
+
+		Class<?> clazz = new TestClassLoader().define(result);
+		assertEquals("called", clazz.getMethod("run1").invoke(null));
+		assertEquals("called", clazz.getMethod("run2").invoke(null));
+	}
+
+	@Test
+	public void testVersionUpgrade() throws Exception {
+		byte[] result = transform(createClass(V1_6));
+		assertEquals(51, getMajorVersion(result));
+		assertEquals(0, new ClassReader(result).readUnsignedShort(4));
+
+		Class<?> clazz = new TestClassLoader().define(result);
+		assertEquals("called", clazz.getMethod("run1").invoke(null));
+	}
+
+	@Test
+	public void testIntermediateMethod() throws Exception {
+		byte[] result = transform(createClass(V1_5));
+		assertEquals(49, getMajorVersion(result));
+		assertEquals(3, getMethodNames(result).size()); // run1, run2, intermediate method
+
+		Class<?> clazz = new TestClassLoader().define(result);
+		assertEquals("called", clazz.getMethod("run1").invoke(null));
+		assertEquals("called", clazz.getMethod("run2").invoke(null));
+	}
+
+	@Test
+	public void testNoMetafactoryForUnmodifiedUnits() throws Exception {
+		byte[] result = transform(createClass(V1_6), new SpeculativeCallbackUnit(), new ConstantUnit());
+		assertEquals(50, getMajorVersion(result));
+		assertEquals(2, getMethodNames(result).size()); // run1, run2
+
+		Class<?> clazz = new TestClassLoader().define(result);
+		assertEquals("foo", clazz.getMethod("run1").invoke(null));
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static moe.yushi.authlibinjector.transform.ConstantPoolScanner.ALL_MATCHED;
+import static moe.yushi.authlibinjector.transform.ConstantPoolScanner.containsMatch;
+import static moe.yushi.authlibinjector.transform.ConstantPoolScanner.encode;
+import static moe.yushi.authlibinjector.transform.ConstantPoolScanner.findPrefixes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.POP2;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import moe.yushi.authlibinjector.util.MultiPatternMatcher;
+
+public class ConstantPoolScannerTest {
+
+	private static byte[] createClass(Object... constants) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()V", null, null);
+		mv.visitCode();
+		for (Object constant : constants) {
+			mv.visitLdcInsn(constant);
+			mv.visitInsn(constant instanceof Long || constant instanceof Double ? POP2 : POP);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(-1, -1);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private final byte[][] prefixes = { encode("http"), encode("Invalid characters in username") };
+
+	@Test
+	public void testNoMatch() {
+		assertEquals(0L, findPrefixes(createClass("hello", 1L, 2.0, 3, 4.0f), prefixes));
+	}
+
+	@Test
+	public void testMatch() {
+		assertEquals(1L, findPrefixes(createClass(1L, "https://api.mojang.com/", 2.0), prefixes));
+		assertEquals(3L, findPrefixes(createClass(1L, "Invalid characters in username", "http://"), prefixes));
+	}
+
+	@Test
+	public void testNonAscii() {
+		byte[][] prefixes = { encode("\u00e9\u4e2d\u0000") };
+		assertEquals(1L, findPrefixes(createClass("\u00e9\u4e2d\u0000!"), prefixes));
+		assertEquals(0L, findPrefixes(createClass("\u00e9\u4e2d"), prefixes));
+	}
+
+	@Test
+	public void testMalformed() {
+		byte[] classfile = createClass("hello");
+		byte[] truncated = new byte[20];
+		System.arraycopy(classfile, 0, truncated, 0, truncated.length);
+		assertEquals(ALL_MATCHED, findPrefixes(truncated, prefixes));
+	}
+
+	@Test
+	public void testContainsMatch() {
+		MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("api.mojang.com", "skins.minecraft.net"));
+		assertTrue(containsMatch(createClass(1L, "https://api.mojang.com/profiles", 2.0), matcher));
+		assertTrue(containsMatch(createClass("\u00e9http://skins.minecraft.net/"), matcher));
+		assertFalse(containsMatch(createClass("https://example.com/", 1L, "api.mojang"), matcher));
+		// a match must not span two entries
+		assertFalse(containsMatch(createClass("api.mojang", ".com"), matcher));
+
+		byte[] classfile = createClass("hello");
+		byte[] truncated = new byte[20];
+		System.arraycopy(classfile, 0, truncated, 0, truncated.length);
+		assertTrue(containsMatch(truncated, matcher));
+	}
+
+	@Test
+	public void testMayTransform() {
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.setIgnores(Collections.singleton("java."));
+		transformer.units.add(new TransformUnit() {
+			@Override
+			public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext context) {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<Set<String>> getTargetConstants() {
+				return Optional.of(Collections.singleton("http"));
+			}
+		});
+
+		assertTrue(transformer.mayTransform("test.Example", createClass("https://api.mojang.com/")));
+		assertFalse(transformer.mayTransform("test.Example", createClass("hello")));
+		// decided by name only
+		assertTrue(transformer.mayTransform("test.Example", null));
+		assertFalse(transformer.mayTransform("java.lang.Example", null));
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASM9;
+import static org.objectweb.asm.Opcodes.ATHROW;
+import static org.objectweb.asm.Opcodes.F_SAME;
+import static org.objectweb.asm.Opcodes.F_SAME1;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.V1_8;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+public class MethodCopyTest {
+
+	private static void visitMethod(ClassWriter cw, String name, String constant) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, name, "(Z)Ljava/lang/String;", null, null);
+		mv.visitCode();
+		Label start = new Label();
+		Label end = new Label();
+		Label handler = new Label();
+		Label other = new Label();
+		mv.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+		mv.visitLabel(start);
+		mv.visitVarInsn(ILOAD, 0);
+		mv.visitJumpInsn(IFEQ, other);
+		mv.visitLdcInsn(constant);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(other);
+		mv.visitFrame(F_SAME, 0, null, 0, null);
+		mv.visitLdcInsn(name);
+		mv.visitLabel(end);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(handler);
+		mv.visitFrame(F_SAME1, 0, null, 1, new Object[] { "java/lang/RuntimeException" });
+		mv.visitInsn(ATHROW);
+		mv.visitMaxs(-1, -1);
+		mv.visitEnd();
+	}
+
+	private static byte[] createClass() {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		visitMethod(cw, "untouched1", "foo");
+		visitMethod(cw, "touched", "foo");
+		visitMethod(cw, "untouched2", "foo");
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	// replaces "foo" with "bar", but only in method "touched"
+	private static class TargetedUnit implements TransformUnit {
+		@Override
+		public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+			return Optional.of(new ClassVisitor(ASM9, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					if (!"touched".equals(name)) {
+						return super.visitMethod(access, name, descriptor, signature, exceptions);
+					}
+					return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+						@Override
+						public void visitLdcInsn(Object value) {
+							if ("foo".equals(value)) {
+								ctx.markModified();
+								super.visitLdcInsn("bar");
+							} else {
+								super.visitLdcInsn(value);
+							}
+						}
+					};
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the raw method_info structures of the given class, by method name.
+	 */
+	private static Map<String, byte[]> getMethodInfos(byte[] classfile) {
+		ClassReader reader = new ClassReader(classfile);
+		char[] buf = new char[reader.getMaxStringLength()];
+		int offset = reader.header + 6;
+		offset += 2 + reader.readUnsignedShort(offset) * 2; // interfaces
+		int fieldsCount = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < fieldsCount; i++) {
+			offset = skipMember(reader, offset);
+		}
+		Map<String, byte[]> methods = new LinkedHashMap<>();
+		int methodsCount = reader.readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < methodsCount; i++) {
+			int start = offset;
+			offset = skipMember(reader, offset);
+			methods.put(reader.readUTF8(start + 2, buf), Arrays.copyOfRange(classfile, start, offset));
+		}
+		return methods;
+	}
+
+	private static int skipMember(ClassReader reader, int offset) {
+		int attributesCount = reader.readUnsignedShort(offset + 6);
+		offset += 8;
+		for (int i = 0; i < attributesCount; i++) {
+			offset += 6 + reader.readInt(offset + 2);
+		}
+		return offset;
+	}
+
+	@Test
+	public void testUnmodifiedMethodsAreCopied() throws Exception {
+		byte[] input = createClass();
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.units.add(new TargetedUnit());
+		byte[] output = transformer.transform(null, "test/Example", null, null, input);
+		assertNotNull(output);
+
+		Map<String, byte[]> before = getMethodInfos(input);
+		Map<String, byte[]> after = getMethodInfos(output);
+		assertArrayEquals(before.get("untouched1"), after.get("untouched1"));
+		assertArrayEquals(before.get("untouched2"), after.get("untouched2"));
+		assertFalse(Arrays.equals(before.get("touched"), after.get("touched")));
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+import java.lang.instrument.IllegalClassFormatException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import moe.yushi.authlibinjector.transform.PerformanceMetrics.Phase;
+
+public class PerformanceMetricsTest {
+
+	private static byte[] createClass(String constant) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(constant);
+		mv.visitInsn(POP);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(-1, -1);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static class ReplacingUnit extends LdcTransformUnit {
+		private final String from;
+
+		ReplacingUnit(String from) {
+			this.from = from;
+		}
+
+		@Override
+		protected Optional<String> transformLdc(String input) {
+			return input.equals(from) ? Optional.of("replaced") : Optional.empty();
+		}
+	}
+
+	@Test
+	public void testUnitMetrics() throws Exception {
+		ReplacingUnit foo = new ReplacingUnit("foo");
+		ReplacingUnit bar = new ReplacingUnit("bar");
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.units.add(foo);
+		transformer.units.add(bar);
+
+		assertNotNull(transformer.transform(null, "test/Example", null, null, createClass("foo")));
+		assertNotNull(transformer.transform(null, "test/Example", null, null, createClass("foo")));
+		assertNull(transformer.transform(null, "test/Example", null, null, createClass("baz")));
+
+		PerformanceMetrics.Snapshot snapshot = transformer.performanceMetrics.snapshot();
+		assertEquals(3, snapshot.getClassesScanned());
+		assertEquals(0, snapshot.getIndexHits());
+		assertEquals(2, snapshot.getUnits().size());
+
+		// units that decline a class before the analysis are only charged for their scan time
+		PerformanceMetrics.UnitSnapshot fooMetrics = snapshot.getUnits().get(foo);
+		assertEquals(2, fooMetrics.getClassesAnalyzed());
+		assertEquals(2, fooMetrics.getClassesTransformed());
+		assertTrue(fooMetrics.getAnalysisTime() > 0);
+
+		PerformanceMetrics.UnitSnapshot barMetrics = snapshot.getUnits().get(bar);
+		assertEquals(0, barMetrics.getClassesAnalyzed());
+		assertEquals(0, barMetrics.getClassesTransformed());
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.units.add(new ReplacingUnit("foo"));
+		byte[] classfile = createClass("foo");
+
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread(() -> {
+				try {
+					for (int j = 0; j < 100; j++) {
+						transformer.transform(null, "test/Example", null, null, classfile);
+					}
+				} catch (IllegalClassFormatException e) {
+					throw new IllegalStateException(e);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		PerformanceMetrics.Snapshot snapshot = transformer.performanceMetrics.snapshot();
+		assertEquals(800, snapshot.getClassesScanned());
+		assertEquals(800, snapshot.getUnits().values().iterator().next().getClassesTransformed());
+		assertEquals(0.0, snapshot.getIndexHitRate());
+	}
+
+	@Test
+	public void testLatencies() throws Exception {
+		ReplacingUnit foo = new ReplacingUnit("foo");
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.units.add(foo);
+		ClassLoader loader = new ClassLoader() {};
+
+		assertNotNull(transformer.transform(loader, "test/Example", null, null, createClass("foo")));
+		assertNull(transformer.transform(null, "test/Example", null, null, createClass("baz")));
+
+		PerformanceMetrics.Snapshot snapshot = transformer.performanceMetrics.snapshot();
+		assertEquals(2, snapshot.getTotalLatency().getCount());
+		assertEquals(2, snapshot.getPhaseLatencies().get(Phase.MATCH).getCount());
+		assertEquals(2, snapshot.getPhaseLatencies().get(Phase.SCAN).getCount());
+		assertEquals(1, snapshot.getPhaseLatencies().get(Phase.ANALYSIS).getCount());
+		assertEquals(2, snapshot.getPhaseLatencies().get(Phase.POST_PROCESSING).getCount());
+		assertEquals(2, snapshot.getUnits().get(foo).getLatency().getCount());
+		assertEquals(1, snapshot.getClassLoaderLatencies().get("bootstrap").getCount());
+		assertEquals(1, snapshot.getClassLoaderLatencies().get(loader.getClass().getName()).getCount());
+
+		assertEquals(2, snapshot.getSlowestClasses().size());
+		assertEquals("test.Example", snapshot.getSlowestClasses().get(0).getClassName());
+		assertTrue(snapshot.getSlowestClasses().get(0).getTime() >= snapshot.getSlowestClasses().get(1).getTime());
+		assertEquals(snapshot.getTotalLatency().getMax(), snapshot.getSlowestClasses().get(0).getTime());
+
+		transformer.performanceMetrics.reset();
+		snapshot = transformer.performanceMetrics.snapshot();
+		assertEquals(0, snapshot.getClassesScanned());
+		assertEquals(0, snapshot.getTotalLatency().getCount());
+		assertEquals(0, snapshot.getPhaseLatencies().get(Phase.MATCH).getCount());
+		assertTrue(snapshot.getUnits().isEmpty());
+		assertTrue(snapshot.getClassLoaderLatencies().isEmpty());
+		assertTrue(snapshot.getSlowestClasses().isEmpty());
+	}
+
+	@Test
+	public void testSlowestClasses() {
+		PerformanceMetrics metrics = new PerformanceMetrics();
+		for (int i = 0; i < 100; i++) {
+			metrics.recordClass(null, "test.Class" + i, (i * 37) % 100);
+		}
+		List<PerformanceMetrics.SlowClass> slowest = metrics.snapshot().getSlowestClasses();
+		assertEquals(10, slowest.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(99 - i, slowest.get(i).getTime());
+		}
+	}
+}
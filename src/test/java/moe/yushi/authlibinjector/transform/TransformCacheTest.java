@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2022  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+public class TransformCacheTest {
+
+	private Path directory;
+
+	@BeforeEach
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("transform-cache");
+	}
+
+	@AfterEach
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private static byte[] createClass(String constant) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC, "test/Example", null, "java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(constant);
+		mv.visitInsn(POP);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(-1, -1);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static class CountingUnit extends LdcTransformUnit {
+		int invocations;
+
+		@Override
+		public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext ctx) {
+			invocations++;
+			return super.transform(classLoader, className, writer, ctx);
+		}
+
+		@Override
+		protected Optional<String> transformLdc(String input) {
+			return input.equals("foo") ? Optional.of("bar") : Optional.empty();
+		}
+	}
+
+	private static class UncacheableUnit extends CountingUnit {
+		@Override
+		public boolean isCacheable() {
+			return false;
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		TransformCache cache = new TransformCache(directory, "seed");
+		TransformUnit[] units = { new CountingUnit(), new CountingUnit() };
+		byte[] key1 = cache.computeKey(units, createClass("foo"));
+		byte[] key2 = cache.computeKey(units, createClass("baz"));
+
+		assertFalse(cache.get(key1).isPresent());
+		cache.put(key1, new TransformCache.Entry(new int[] { 1 }, new byte[] { 1, 2, 3 }));
+		cache.put(key2, new TransformCache.Entry(new int[0], null));
+
+		TransformCache.Entry entry1 = cache.get(key1).get();
+		assertArrayEquals(new byte[] { 1, 2, 3 }, entry1.getResult().get());
+		assertEquals(1, entry1.getAppliedUnits().length);
+		assertEquals(1, entry1.getAppliedUnits()[0]);
+
+		TransformCache.Entry entry2 = cache.get(key2).get();
+		assertFalse(entry2.getResult().isPresent());
+		assertEquals(0, entry2.getAppliedUnits().length);
+	}
+
+	@Test
+	public void testKey() throws IOException {
+		byte[] classfile = createClass("foo");
+		TransformUnit[] units1 = { new CountingUnit() };
+		TransformUnit[] units2 = { new CountingUnit(), new CountingUnit() };
+		TransformCache cache1 = new TransformCache(directory, "seed1");
+		TransformCache cache2 = new TransformCache(directory, "seed2");
+
+		assertArrayEquals(cache1.computeKey(units1, classfile), cache1.computeKey(units1, classfile.clone()));
+		assertFalse(Arrays.equals(cache1.computeKey(units1, classfile), cache1.computeKey(units2, classfile)));
+		assertFalse(Arrays.equals(cache1.computeKey(units1, classfile), cache2.computeKey(units1, classfile)));
+		assertFalse(Arrays.equals(cache1.computeKey(units1, classfile), cache1.computeKey(units1, createClass("baz"))));
+	}
+
+	@Test
+	public void testMalformedEntry() throws IOException {
+		TransformCache cache = new TransformCache(directory, "seed");
+		byte[] key = cache.computeKey(new TransformUnit[0], createClass("foo"));
+		cache.put(key, new TransformCache.Entry(new int[0], new byte[] { 1, 2, 3 }));
+		try (Stream<Path> files = Files.walk(directory)) {
+			Path entry = files.filter(Files::isRegularFile).findFirst().get();
+			byte[] content = Files.readAllBytes(entry);
+			Files.write(entry, Arrays.copyOf(content, content.length - 1));
+		}
+		assertFalse(cache.get(key).isPresent());
+	}
+
+	@Test
+	public void testClassTransformer() throws Exception {
+		byte[] classfile = createClass("foo");
+
+		CountingUnit unit1 = new CountingUnit();
+		ClassTransformer transformer1 = new ClassTransformer();
+		transformer1.units.add(unit1);
+		transformer1.setCache(new TransformCache(directory, "seed"));
+		byte[] result1 = transformer1.transform(null, "test/Example", null, null, classfile);
+		assertNotNull(result1);
+		assertEquals(1, unit1.invocations);
+		assertEquals(1, transformer1.performanceMetrics.getCacheMisses());
+
+		// a new transformer, as if the JVM has been restarted
+		CountingUnit unit2 = new CountingUnit();
+		ClassTransformer transformer2 = new ClassTransformer();
+		transformer2.units.add(unit2);
+		transformer2.setCache(new TransformCache(directory, "seed"));
+		byte[] result2 = transformer2.transform(null, "test/Example", null, null, classfile);
+		assertArrayEquals(result1, result2);
+		assertEquals(0, unit2.invocations);
+		assertEquals(1, transformer2.performanceMetrics.getCacheHits());
+
+		// unchanged classes are cached as well
+		byte[] unchanged = createClass("baz");
+		assertNull(transformer2.transform(null, "test/Example", null, null, unchanged));
+		assertNull(transformer2.transform(null, "test/Example", null, null, unchanged));
+		assertEquals(1, unit2.invocations);
+		assertEquals(2, transformer2.performanceMetrics.getCacheHits());
+	}
+
+	private static class LocalURLUnit extends CountingUnit {
+		final int port;
+
+		LocalURLUnit(int port) {
+			this.port = port;
+		}
+
+		@Override
+		protected Optional<String> transformLdc(String input) {
+			return input.equals("foo") ? Optional.of("http://127.0.0.1:" + port + "/foo") : Optional.empty();
+		}
+	}
+
+	@Test
+	public void testSeedWithDifferentPort() throws Exception {
+		byte[] classfile = createClass("foo");
+
+		LocalURLUnit unit1 = new LocalURLUnit(1000);
+		ClassTransformer transformer1 = new ClassTransformer();
+		transformer1.units.add(unit1);
+		transformer1.setCache(new TransformCache(directory, "seed\nlocal=http://127.0.0.1:1000\n"));
+		byte[] result1 = transformer1.transform(null, "test/Example", null, null, classfile);
+		assertNotNull(result1);
+
+		// restarted, and the httpd is listening on another port
+		LocalURLUnit unit2 = new LocalURLUnit(2000);
+		ClassTransformer transformer2 = new ClassTransformer();
+		transformer2.units.add(unit2);
+		transformer2.setCache(new TransformCache(directory, "seed\nlocal=http://127.0.0.1:2000\n"));
+		byte[] result2 = transformer2.transform(null, "test/Example", null, null, classfile);
+		assertNotNull(result2);
+		assertFalse(Arrays.equals(result1, result2));
+		assertEquals(1, unit2.invocations);
+		assertEquals(0, transformer2.performanceMetrics.getCacheHits());
+		assertEquals(1, transformer2.performanceMetrics.getCacheMisses());
+	}
+
+	@Test
+	public void testUncacheableUnit() throws Exception {
+		byte[] classfile = createClass("foo");
+		UncacheableUnit unit = new UncacheableUnit();
+		ClassTransformer transformer = new ClassTransformer();
+		transformer.units.add(unit);
+		transformer.setCache(new TransformCache(directory, "seed"));
+		assertNotNull(transformer.transform(null, "test/Example", null, null, classfile));
+		assertNotNull(transformer.transform(null, "test/Example", null, null, classfile));
+		assertEquals(2, unit.invocations);
+		assertEquals(0, transformer.performanceMetrics.getCacheHits());
+		assertEquals(0, transformer.performanceMetrics.getCacheMisses());
+		try (Stream<Path> files = Files.walk(directory)) {
+			assertTrue(files.noneMatch(Files::isRegularFile));
+		}
+	}
+}
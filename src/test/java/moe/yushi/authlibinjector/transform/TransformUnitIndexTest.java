@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.transform;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassVisitor;
+
+public class TransformUnitIndexTest {
+
+	private static TransformUnit unit(String... targets) {
+		return new TransformUnit() {
+			@Override
+			public Optional<ClassVisitor> transform(ClassLoader classLoader, String className, ClassVisitor writer, TransformContext context) {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<Set<String>> getTargetClasses() {
+				return targets.length == 0 ? Optional.empty() : Optional.of(new HashSet<>(Arrays.asList(targets)));
+			}
+		};
+	}
+
+	private final TransformUnit wildcard = unit();
+	private final TransformUnit exact = unit("com.example.A", "com.example.B");
+	private final TransformUnit prefix = unit("com.example.");
+	private final TransformUnit[] units = { exact, wildcard, prefix };
+	private final TransformUnitIndex index = new TransformUnitIndex(units);
+
+	@Test
+	public void testExactMatch() {
+		TransformUnit[] result = index.lookup("com.example.A");
+		assertArrayEquals(new TransformUnit[] { exact, wildcard, prefix }, result);
+		assertTrue(index.isHit(result));
+	}
+
+	@Test
+	public void testPrefixMatch() {
+		TransformUnit[] result = index.lookup("com.example.C");
+		assertArrayEquals(new TransformUnit[] { wildcard, prefix }, result);
+		assertTrue(index.isHit(result));
+	}
+
+	@Test
+	public void testMiss() {
+		TransformUnit[] result = index.lookup("org.example.A");
+		assertArrayEquals(new TransformUnit[] { wildcard }, result);
+		assertFalse(index.isHit(result));
+	}
+
+	@Test
+	public void testUpToDate() {
+		assertTrue(index.isUpToDate(Arrays.asList(units)));
+		List<TransformUnit> modified = Arrays.asList(exact, wildcard, unit("com.example.A"));
+		assertFalse(index.isUpToDate(modified));
+		assertFalse(index.isUpToDate(Arrays.asList(exact, wildcard)));
+	}
+}
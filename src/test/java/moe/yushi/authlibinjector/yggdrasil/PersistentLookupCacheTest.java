@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2026  Haowei Wen <yushijinhun@gmail.com> and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package moe.yushi.authlibinjector.yggdrasil;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import moe.yushi.authlibinjector.yggdrasil.GameProfile.PropertyValue;
+
+public class PersistentLookupCacheTest {
+
+	private static final UUID ALICE = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+	private Path dir;
+	private Path file;
+
+	@BeforeEach
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("authlib-injector-test");
+		file = dir.resolve("lookupcache");
+	}
+
+	@AfterEach
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path f : (Iterable<Path>) files::iterator) {
+				Files.delete(f);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	private static GameProfile newProfile() {
+		GameProfile profile = new GameProfile();
+		profile.id = ALICE;
+		profile.name = "Alice";
+		profile.properties = new LinkedHashMap<>();
+		PropertyValue textures = new PropertyValue();
+		textures.value = "e30=";
+		textures.signature = "c2ln";
+		profile.properties.put("textures", textures);
+		return profile;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		long expiresAt = System.currentTimeMillis() + 60000;
+		PersistentLookupCache cache = new PersistentLookupCache(file, 0);
+		assertTrue(cache.load("api").isEmpty());
+		cache.appendUUID("api", expiresAt, "alice", "Alice", ALICE);
+		cache.appendUUID("api", expiresAt, "carol", null, null);
+		cache.appendProfile("api", expiresAt, ALICE, true, newProfile());
+		cache.appendUUID("other", expiresAt, "bob", "Bob", UUID.randomUUID());
+		cache.close();
+
+		PersistentLookupCache reloaded = new PersistentLookupCache(file, 0);
+		List<PersistentLookupCache.Record> records = reloaded.load("api");
+		assertEquals(3, records.size());
+
+		PersistentLookupCache.UUIDRecord alice = (PersistentLookupCache.UUIDRecord) records.get(0);
+		assertEquals("Alice", alice.name);
+		assertEquals(ALICE, alice.uuid);
+		assertEquals(expiresAt, alice.expiresAt);
+		assertNull(((PersistentLookupCache.UUIDRecord) records.get(1)).name);
+
+		PersistentLookupCache.ProfileRecord profile = (PersistentLookupCache.ProfileRecord) records.get(2);
+		assertTrue(profile.withSignature);
+		assertEquals("Alice", profile.profile.name);
+		assertEquals("c2ln", profile.profile.properties.get("textures").signature);
+
+		// each API gets its records once
+		assertTrue(reloaded.load("api").isEmpty());
+		assertEquals(1, reloaded.load("other").size());
+	}
+
+	@Test
+	public void testExpiry() {
+		long now = System.currentTimeMillis();
+		PersistentLookupCache cache = new PersistentLookupCache(file, 0);
+		cache.load("api");
+		cache.appendUUID("api", now - 1000, "expired", null, null);
+		cache.appendUUID("api", now + 60000, "fresh", null, null);
+		cache.close();
+
+		assertEquals(1, new PersistentLookupCache(file, 0).load("api").size());
+		// still within the stale windows
+		assertEquals(2, new PersistentLookupCache(file, 60000).load("api").size());
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		long expiresAt = System.currentTimeMillis() + 60000;
+		PersistentLookupCache cache = new PersistentLookupCache(file, 0);
+		cache.load("api");
+		for (int i = 0; i < 10000; i++) {
+			cache.appendUUID("api", expiresAt, "name" + (i % 10), null, null);
+		}
+		cache.close();
+
+		// without compaction, it would have 10000 records of ~22 bytes
+		assertTrue(Files.size(file) < 1024 * 32, "size: " + Files.size(file));
+		assertEquals(10, new PersistentLookupCache(file, 0).load("api").size());
+	}
+
+	@Test
+	public void testTruncatedFile() throws IOException {
+		long expiresAt = System.currentTimeMillis() + 60000;
+		PersistentLookupCache cache = new PersistentLookupCache(file, 0);
+		cache.load("api");
+		cache.appendUUID("api", expiresAt, "alice", "Alice", ALICE);
+		cache.appendUUID("api", expiresAt, "bob", null, null);
+		cache.close();
+
+		byte[] content = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(content, content.length - 3), StandardOpenOption.TRUNCATE_EXISTING);
+
+		PersistentLookupCache reloaded = new PersistentLookupCache(file, 0);
+		assertEquals(1, reloaded.load("api").size());
+		// the damaged record is dropped, so that new records can be appended
+		reloaded.appendUUID("api", expiresAt, "carol", null, null);
+		reloaded.close();
+		assertEquals(2, new PersistentLookupCache(file, 0).load("api").size());
+	}
+
+	@Test
+	public void testSharedFile() {
+		long expiresAt = System.currentTimeMillis() + 60000;
+		PersistentLookupCache owner = new PersistentLookupCache(file, 0);
+		owner.load("api");
+		owner.appendUUID("api", expiresAt, "alice", "Alice", ALICE);
+
+		// the file is locked by the first instance, so the second one can only read it
+		PersistentLookupCache other = new PersistentLookupCache(file, 0);
+		other.load("api");
+		other.appendUUID("api", expiresAt, "bob", null, null);
+		other.close();
+		owner.close();
+
+		List<PersistentLookupCache.Record> records = new PersistentLookupCache(file, 0).load("api");
+		assertEquals(1, records.size());
+		assertEquals("alice", ((PersistentLookupCache.UUIDRecord) records.get(0)).key);
+	}
+}